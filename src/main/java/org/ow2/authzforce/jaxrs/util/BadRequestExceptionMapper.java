@@ -18,7 +18,6 @@
 package org.ow2.authzforce.jaxrs.util;
 
 import java.beans.ConstructorProperties;
-import java.util.regex.Pattern;
 
 import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.core.Response;
@@ -37,29 +36,136 @@ import org.xml.sax.SAXException;
 public class BadRequestExceptionMapper implements ExceptionMapper<BadRequestException>
 {
 	private static final Logger LOGGER = LoggerFactory.getLogger(BadRequestExceptionMapper.class);
-	private static final Pattern JAXBEXCEPTION_MSG_START_PATTERN = Pattern.compile("^JAXBException occurred :", Pattern.CASE_INSENSITIVE);
+	private static final String JAXBEXCEPTION_MSG_START = "JAXBException occurred :";
 	private static final String INVALID_PARAM_MSG_PREFIX = "Invalid parameters: ";
+	private static final JaxbErrorMessage NO_DETAILS_ERROR = new JaxbErrorMessage("", null);
+
+	/*
+	 * Maximum number of causes included in the error response, whatever the verbosity level (protection against very long cause chains)
+	 */
+	private static final int MAX_CAUSE_DEPTH = 16;
+
+	/**
+	 * Message extraction strategy depending on the type of the (first) cause of the {@link BadRequestException}
+	 */
+	private enum CauseType
+	{
+		/**
+		 * JAXB schema validation error
+		 */
+		SAX(INVALID_PARAM_MSG_PREFIX, false)
+		{
+			@Override
+			Throwable getMessageSource(final Throwable cause)
+			{
+				final Throwable internalCause = cause.getCause();
+				return internalCause != null && CAUSE_TYPES.get(internalCause.getClass()) == JAXB ? JAXB.getMessageSource(internalCause) : cause;
+			}
+		},
+
+		JAXB(INVALID_PARAM_MSG_PREFIX, false)
+		{
+			@Override
+			Throwable getMessageSource(final Throwable cause)
+			{
+				final Throwable linkedEx = ((JAXBException) cause).getLinkedException();
+				return linkedEx == null ? cause : linkedEx;
+			}
+		},
+
+		CLASS_CAST("Wrong type of input: ", true),
+
+		OTHER(null, false);
+
+		private final String messagePrefix;
+		private final boolean hidesCauses;
+
+		CauseType(final String messagePrefix, final boolean hidesCauses)
+		{
+			this.messagePrefix = messagePrefix;
+			this.hidesCauses = hidesCauses;
+		}
+
+		/**
+		 * Gets the exception providing the error message and the next causes to be returned
+		 */
+		Throwable getMessageSource(final Throwable cause)
+		{
+			return cause;
+		}
+	}
+
+	private static final ClassValue<CauseType> CAUSE_TYPES = new ClassValue<>()
+	{
+		@Override
+		protected CauseType computeValue(final Class<?> type)
+		{
+			if (SAXException.class.isAssignableFrom(type))
+			{
+				return CauseType.SAX;
+			}
+
+			if (JAXBException.class.isAssignableFrom(type))
+			{
+				return CauseType.JAXB;
+			}
+
+			if (ClassCastException.class.isAssignableFrom(type))
+			{
+				return CauseType.CLASS_CAST;
+			}
+
+			return CauseType.OTHER;
+		}
+	};
+
 	private final int verbosityLevel;
+	private final ErrorStatistics errorStatistics;
 
-	private static JaxbErrorMessage newJaxbErrorMessage(final Throwable cause, final int errVerbosityLevel)
+	private static JaxbErrorMessage newCausesErrorMessage(final Throwable msgSource, final int errVerbosityLevel)
 	{
-		if (errVerbosityLevel == 0 || cause == null)
+		/*
+		 * collect the causes of the message source (iteratively, stopping at the first already collected one - or the message source itself - if the chain is cyclic), then chain the messages from
+		 * the last one
+		 */
+		final Throwable[] chain = new Throwable[Math.min(errVerbosityLevel, MAX_CAUSE_DEPTH) + 1];
+		chain[0] = msgSource;
+		int chainLength = 1;
+		Throwable nextCause = msgSource.getCause();
+		collect: while (nextCause != null && chainLength < chain.length)
+		{
+			for (int i = 0; i < chainLength; i++)
+			{
+				if (chain[i] == nextCause)
+				{
+					break collect;
+				}
+			}
+
+			chain[chainLength++] = nextCause;
+			nextCause = nextCause.getCause();
+		}
+
+		JaxbErrorMessage errMsg = null;
+		for (int i = chainLength - 1; i >= 1; i--)
 		{
-			return null;
+			errMsg = new JaxbErrorMessage(chain[i].getMessage(), errMsg);
 		}
 
-		return new JaxbErrorMessage(cause.getMessage(), newJaxbErrorMessage(cause.getCause(), errVerbosityLevel - 1));
+		return errMsg;
 	}
 
 	/**
 	 * Constructor
 	 * 
 	 * @param verbosityLevel
-	 *            level of verbosity of error information, i.e. depth of exception stacktrace to include in the response returned from {@link #toResponse(BadRequestException)}. Not applicable for
-	 *            {@link SAXException}, {@link JAXBException} or {@link ClassCastException}.
+	 *            level of verbosity of error information, i.e. depth of exception stacktrace to include in the response returned from {@link #toResponse(BadRequestException)} (the number of
+	 *            causes is capped at 16). Not applicable for {@link SAXException}, {@link JAXBException} or {@link ClassCastException}.
+	 * @param errorStatistics
+	 *            error statistics where mapped exceptions are recorded; null iff no statistics shall be recorded
 	 */
-	@ConstructorProperties({ "verbosityLevel" })
-	public BadRequestExceptionMapper(final int verbosityLevel)
+	@ConstructorProperties({ "verbosityLevel", "errorStatistics" })
+	public BadRequestExceptionMapper(final int verbosityLevel, final ErrorStatistics errorStatistics)
 	{
 		if (verbosityLevel < 0)
 		{
@@ -67,6 +173,20 @@ public class BadRequestExceptionMapper implements ExceptionMapper<BadRequestExce
 		}
 
 		this.verbosityLevel = verbosityLevel;
+		this.errorStatistics = errorStatistics;
+	}
+
+	/**
+	 * Constructor without error statistics
+	 * 
+	 * @param verbosityLevel
+	 *            level of verbosity of error information, i.e. depth of exception stacktrace to include in the response returned from {@link #toResponse(BadRequestException)} (the number of
+	 *            causes is capped at 16). Not applicable for {@link SAXException}, {@link JAXBException} or {@link ClassCastException}.
+	 */
+	@ConstructorProperties({ "verbosityLevel" })
+	public BadRequestExceptionMapper(final int verbosityLevel)
+	{
+		this(verbosityLevel, null);
 	}
 
 	/**
@@ -81,75 +201,42 @@ public class BadRequestExceptionMapper implements ExceptionMapper<BadRequestExce
 	public Response toResponse(final BadRequestException exception)
 	{
 		LOGGER.info("Bad request", exception);
-		final Response oldResp = exception.getResponse();
-		final String errMsg;
-		final Throwable cause = exception.getCause();
-		final Throwable returnedCause;
+		if (errorStatistics != null)
+		{
+			errorStatistics.record(Response.Status.BAD_REQUEST.getStatusCode(), exception);
+		}
 
 		if (verbosityLevel == 0)
 		{
-			errMsg = "";
-			returnedCause = null;
+			return Response.status(Response.Status.BAD_REQUEST).entity(NO_DETAILS_ERROR).build();
 		}
-		else if (cause == null)
-		{
-			returnedCause = null;
 
+		final Throwable cause = exception.getCause();
+		if (cause == null)
+		{
 			/*
 			 * handle case where cause message is only in the response message (no exception object in stacktrace), e.g. JAXBException
 			 */
-			final Object oldEntity = oldResp.getEntity();
-			if (oldEntity instanceof String)
-			{
-				// hide "JAXBException..." when it occurs and only keep the JAXBException message
-				errMsg = JAXBEXCEPTION_MSG_START_PATTERN.matcher((String) oldEntity).replaceFirst(INVALID_PARAM_MSG_PREFIX);
-			}
-			else
+			final Response oldResp = exception.getResponse();
+			if (!(oldResp.getEntity() instanceof String oldEntity))
 			{
 				return oldResp;
 			}
 
-		}
-		else
-		{
-			/*
-			 * cause != null && verbosityLevel >= 1
-			 */
-			// JAXB schema validation error
-			if (cause instanceof SAXException)
-			{
-				final Throwable internalCause = cause.getCause();
-				if (internalCause instanceof JAXBException)
-				{
-					final Throwable linkedEx = ((JAXBException) internalCause).getLinkedException();
-					errMsg = INVALID_PARAM_MSG_PREFIX + linkedEx.getMessage();
-					returnedCause = linkedEx.getCause();
-				}
-				else
-				{
-					errMsg = INVALID_PARAM_MSG_PREFIX + cause.getMessage();
-					returnedCause = cause.getCause();
-				}
-			}
-			else if (cause instanceof JAXBException)
-			{
-				final Throwable linkedEx = ((JAXBException) cause).getLinkedException();
-				errMsg = INVALID_PARAM_MSG_PREFIX + linkedEx.getMessage();
-				returnedCause = linkedEx.getCause();
-			}
-			else if (cause instanceof ClassCastException)
-			{
-				errMsg = "Wrong type of input: " + cause.getMessage();
-				returnedCause = null;
-			}
-			else
-			{
-				errMsg = cause.getMessage();
-				returnedCause = cause.getCause();
-			}
+			// hide "JAXBException..." when it occurs and only keep the JAXBException message
+			final String errMsg = oldEntity.regionMatches(true, 0, JAXBEXCEPTION_MSG_START, 0, JAXBEXCEPTION_MSG_START.length())
+			        ? INVALID_PARAM_MSG_PREFIX + oldEntity.substring(JAXBEXCEPTION_MSG_START.length()) : oldEntity;
+			return Response.status(Response.Status.BAD_REQUEST).entity(new JaxbErrorMessage(errMsg, null)).build();
 		}
 
-		final JaxbErrorMessage errorEntity = errMsg == null ? new JaxbErrorMessage("", null) : new JaxbErrorMessage(errMsg, newJaxbErrorMessage(returnedCause, verbosityLevel - 1));
+		/*
+		 * cause != null && verbosityLevel >= 1
+		 */
+		final CauseType causeType = CAUSE_TYPES.get(cause.getClass());
+		final Throwable msgSource = causeType.getMessageSource(cause);
+		final String errMsg = causeType.messagePrefix == null ? msgSource.getMessage() : causeType.messagePrefix + msgSource.getMessage();
+		final JaxbErrorMessage errorEntity = errMsg == null ? NO_DETAILS_ERROR
+		        : new JaxbErrorMessage(errMsg, causeType.hidesCauses ? null : newCausesErrorMessage(msgSource, verbosityLevel - 1));
 		return Response.status(Response.Status.BAD_REQUEST).entity(errorEntity).build();
 	}
 
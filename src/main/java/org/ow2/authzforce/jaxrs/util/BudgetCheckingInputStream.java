@@ -0,0 +1,299 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+
+import jakarta.ws.rs.ServiceUnavailableException;
+
+/**
+ * Input stream checking {@link JsonDocumentBudget} limits on the UTF-8 JSON input as the parser reads it. The JSON structure is tracked with a lightweight lexical scan of the bytes (JSON delimiters
+ * are ASCII, and never part of multi-byte UTF-8 sequences), independently from the actual parser. Syntax errors are left to the parser. Bytes after the end of the root object or array (read ahead by
+ * the parser's buffered reader) are not checked at all, since the parser ignores them.
+ * <p>
+ * Like the parser, a quote inside an unquoted literal (e.g. {@code x'}) is part of the literal, not the start of a string; and an elided array element (e.g. the first two elements of
+ * {@code [,,1]}), which the parser turns into a null element, is counted as a node.
+ * <p>
+ * A document larger than the whole capacity of the shared memory budget is rejected as too large (413), since it cannot be parsed whatever the load.
+ * <p>
+ * Not thread-safe (one instance per parsing).
+ */
+final class BudgetCheckingInputStream extends FilterInputStream
+{
+	/*
+	 * Pre-allocated since it may be thrown often when the server is overloaded
+	 */
+	private static final ServiceUnavailableException MEMORY_BUDGET_EXHAUSTED_EXCEPTION = new ServiceUnavailableException("JSON parsing memory budget exhausted");
+
+	private final int maxNumOfNodes;
+	private final int maxTotalKeySize;
+	private final int maxTotalStringSize;
+	private final JsonParsingMemoryBudget sharedMemoryBudget;
+
+	private long numOfNodes = 0;
+	private long totalKeySize = 0;
+	private long totalStringSize = 0;
+	private long acquiredMemory = 0;
+
+	/*
+	 * Lexical scan state
+	 */
+	// bit set iff the container at the corresponding depth is an object (else an array)
+	private final BitSet objectContainers = new BitSet();
+	private int depth = 0;
+	private boolean expectingKey = false;
+	// in array, after '[' or ',' (a ',' at this point elides an element)
+	private boolean expectingArrayElement = false;
+	// quote character of the string being read, or 0 if not in a string
+	private int stringQuote = 0;
+	private boolean stringIsKey = false;
+	private boolean escaping = false;
+	// in unquoted literal (number, boolean, null, unquoted string or key)
+	private boolean inLiteral = false;
+	private boolean literalIsKey = false;
+	// end of the root object/array reached
+	private boolean rootClosed = false;
+
+	BudgetCheckingInputStream(final InputStream in, final int maxNumOfNodes, final int maxTotalKeySize, final int maxTotalStringSize, final JsonParsingMemoryBudget sharedMemoryBudget)
+	{
+		super(in);
+		this.maxNumOfNodes = maxNumOfNodes;
+		this.maxTotalKeySize = maxTotalKeySize;
+		this.maxTotalStringSize = maxTotalStringSize;
+		this.sharedMemoryBudget = sharedMemoryBudget;
+	}
+
+	private boolean isInObject()
+	{
+		return depth > 0 && objectContainers.get(depth - 1);
+	}
+
+	private void scan(final int b)
+	{
+		if (stringQuote != 0)
+		{
+			if (escaping)
+			{
+				escaping = false;
+			}
+			else if (b == '\\')
+			{
+				escaping = true;
+			}
+			else if (b == stringQuote)
+			{
+				stringQuote = 0;
+				return;
+			}
+
+			if (stringIsKey)
+			{
+				totalKeySize++;
+			}
+			else
+			{
+				totalStringSize++;
+			}
+
+			return;
+		}
+
+		switch (b)
+		{
+			case '"', '\'' -> {
+				if (inLiteral)
+				{
+					// part of the unquoted literal
+					countLiteralByte();
+					return;
+				}
+
+				expectingArrayElement = false;
+				stringQuote = b;
+				stringIsKey = expectingKey && isInObject();
+				if (!stringIsKey)
+				{
+					numOfNodes++;
+				}
+			}
+			case '{', '[' -> {
+				inLiteral = false;
+				numOfNodes++;
+				objectContainers.set(depth, b == '{');
+				depth++;
+				expectingKey = b == '{';
+				expectingArrayElement = b == '[';
+			}
+			case '}', ']' -> {
+				inLiteral = false;
+				if (depth > 0)
+				{
+					depth--;
+					rootClosed = depth == 0;
+				}
+
+				expectingKey = false;
+				expectingArrayElement = false;
+			}
+			case ',', ';' -> {
+				inLiteral = false;
+				if (expectingArrayElement)
+				{
+					// elided element
+					numOfNodes++;
+				}
+
+				expectingKey = isInObject();
+				expectingArrayElement = !expectingKey && depth > 0;
+			}
+			case ':' -> {
+				inLiteral = false;
+				expectingKey = false;
+			}
+			default -> {
+				if (b <= ' ')
+				{
+					// whitespace
+					inLiteral = false;
+					return;
+				}
+
+				if (!inLiteral)
+				{
+					inLiteral = true;
+					expectingArrayElement = false;
+					literalIsKey = expectingKey && isInObject();
+					if (!literalIsKey)
+					{
+						numOfNodes++;
+					}
+				}
+
+				countLiteralByte();
+			}
+		}
+	}
+
+	private void countLiteralByte()
+	{
+		if (literalIsKey)
+		{
+			totalKeySize++;
+		}
+		else
+		{
+			totalStringSize++;
+		}
+	}
+
+	private void check(final int numOfBytesRead)
+	{
+		if (numOfNodes > maxNumOfNodes)
+		{
+			throw new IllegalArgumentException("JSON document exceeds the allowed maximum number of nodes (" + maxNumOfNodes + ")");
+		}
+
+		if (totalKeySize > maxTotalKeySize)
+		{
+			throw new IllegalArgumentException("JSON document exceeds the allowed maximum total size of keys (" + maxTotalKeySize + " bytes)");
+		}
+
+		if (totalStringSize > maxTotalStringSize)
+		{
+			throw new IllegalArgumentException("JSON document exceeds the allowed maximum total size of string values (" + maxTotalStringSize + " bytes)");
+		}
+
+		if (sharedMemoryBudget != null)
+		{
+			if (acquiredMemory + numOfBytesRead > sharedMemoryBudget.getCapacity())
+			{
+				throw new IllegalArgumentException("JSON document exceeds the capacity of the JSON parsing memory budget (" + sharedMemoryBudget.getCapacity() + " bytes)");
+			}
+
+			if (!sharedMemoryBudget.tryAcquire(numOfBytesRead))
+			{
+				throw MEMORY_BUDGET_EXHAUSTED_EXCEPTION;
+			}
+
+			acquiredMemory += numOfBytesRead;
+		}
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		final int b = super.read();
+		if (b != -1 && !rootClosed)
+		{
+			scan(b);
+			check(1);
+		}
+
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException
+	{
+		final int n = super.read(b, off, len);
+		if (n > 0)
+		{
+			int numOfBytesToCheck = 0;
+			while (numOfBytesToCheck < n && !rootClosed)
+			{
+				scan(b[off + numOfBytesToCheck] & 0xFF);
+				numOfBytesToCheck++;
+			}
+
+			if (numOfBytesToCheck > 0)
+			{
+				check(numOfBytesToCheck);
+			}
+		}
+
+		return n;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException
+	{
+		// skipped bytes would not be scanned
+		throw new IOException("skip not supported");
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * Releases the memory acquired from the shared memory budget (if any). To be called when parsing is over.
+	 */
+	void releaseMemory()
+	{
+		if (sharedMemoryBudget != null && acquiredMemory > 0)
+		{
+			sharedMemoryBudget.release(acquiredMemory);
+			acquiredMemory = 0;
+		}
+	}
+}
@@ -17,6 +17,8 @@
  */
 package org.ow2.authzforce.jaxrs.util;
 
+import java.beans.ConstructorProperties;
+
 import jakarta.ws.rs.ClientErrorException;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
@@ -28,10 +30,35 @@ import jakarta.ws.rs.ext.Provider;
 @Provider
 public class ClientErrorExceptionMapper implements ExceptionMapper<ClientErrorException>
 {
+	private final ErrorStatistics errorStatistics;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param errorStatistics
+	 *            error statistics where mapped exceptions are recorded; null iff no statistics shall be recorded
+	 */
+	@ConstructorProperties({ "errorStatistics" })
+	public ClientErrorExceptionMapper(final ErrorStatistics errorStatistics)
+	{
+		this.errorStatistics = errorStatistics;
+	}
+
+	/**
+	 * Default constructor, without error statistics
+	 */
+	public ClientErrorExceptionMapper()
+	{
+		this(null);
+	}
 
 	@Override
 	public Response toResponse(final ClientErrorException exception)
 	{
+		if (errorStatistics != null)
+		{
+			errorStatistics.record(exception.getResponse().getStatus(), exception);
+		}
 
 		// if NotFoundException has root cause, we expect the root cause message to be more specific
 		// on what resource could not be found, so return this message to the client
@@ -17,6 +17,8 @@
  */
 package org.ow2.authzforce.jaxrs.util;
 
+import java.beans.ConstructorProperties;
+
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
@@ -34,6 +36,28 @@ public class DefaultExceptionMapper implements ExceptionMapper<Throwable>
 	private final static String INTERNAL_ERR_MSG = "Internal server error:";
 	private final static JaxbErrorMessage ERROR = new JaxbErrorMessage("Internal server error. Retry later or contact the administrator.", null);
 
+	private final ErrorStatistics errorStatistics;
+
+	/**
+	 * Constructor
+	 *
+	 * @param errorStatistics
+	 *            error statistics where mapped exceptions are recorded; null iff no statistics shall be recorded
+	 */
+	@ConstructorProperties({ "errorStatistics" })
+	public DefaultExceptionMapper(final ErrorStatistics errorStatistics)
+	{
+		this.errorStatistics = errorStatistics;
+	}
+
+	/**
+	 * Default constructor, without error statistics
+	 */
+	public DefaultExceptionMapper()
+	{
+		this(null);
+	}
+
 	@Override
 	public Response toResponse(final Throwable exception)
 	{
@@ -41,13 +65,21 @@ public class DefaultExceptionMapper implements ExceptionMapper<Throwable>
 			final Response httpResp = ex.getResponse();
 			switch(httpResp.getStatusInfo().getFamily()) {
 				// Normal response (not a server error or unknown type of error), return as is.
-				case SUCCESSFUL, CLIENT_ERROR, INFORMATIONAL, REDIRECTION -> { return httpResp;}
+				case SUCCESSFUL, CLIENT_ERROR, INFORMATIONAL, REDIRECTION -> {
+					if (errorStatistics != null) {
+						errorStatistics.record(httpResp.getStatus(), exception);
+					}
+					return httpResp;
+				}
 			}
 		}
 		/*
 		 * Hide any internal server error info to clients
 		 */
 		LOGGER.error(INTERNAL_ERR_MSG, exception);
+		if (errorStatistics != null) {
+			errorStatistics.record(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), exception);
+		}
 		return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(ERROR).build();
 	}
 }
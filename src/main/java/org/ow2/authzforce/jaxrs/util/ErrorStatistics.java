@@ -0,0 +1,273 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Error counters by HTTP status code (4xx and 5xx) and root cause class of the exception, with error rates over a sliding time window. Meant to be shared by the {@link jakarta.ws.rs.ext.ExceptionMapper}s
+ * of this package, and exposed by {@link ErrorStatisticsResource}. Thread-safe.
+ */
+public final class ErrorStatistics
+{
+	private static final int MIN_ERROR_STATUS = 400;
+	private static final int MAX_ERROR_STATUS = 599;
+
+	/*
+	 * Maximum depth of the cause chain walked to find the root cause (protection against very long chains)
+	 */
+	private static final int MAX_CAUSE_DEPTH = 32;
+	private static final String NO_ROOT_CAUSE = "none";
+
+	/**
+	 * Count of events per second over a sliding window of seconds. Each bucket is replaced (compare-and-set) by a new one when its second is over, so no event of the current second is lost; an event
+	 * recorded late, after its bucket has been replaced by one of a later second, is counted in the later one.
+	 */
+	private static final class SlidingWindowCounter
+	{
+		private static final class Bucket
+		{
+			private final long second;
+			private final LongAdder count = new LongAdder();
+
+			private Bucket(final long second)
+			{
+				this.second = second;
+			}
+		}
+
+		private final int windowSizeSeconds;
+		private final AtomicReferenceArray<Bucket> buckets;
+
+		private SlidingWindowCounter(final int windowSizeSeconds)
+		{
+			this.windowSizeSeconds = windowSizeSeconds;
+			this.buckets = new AtomicReferenceArray<>(windowSizeSeconds);
+			// older than any window
+			final Bucket expiredBucket = new Bucket(-windowSizeSeconds);
+			for (int i = 0; i < windowSizeSeconds; i++)
+			{
+				buckets.set(i, expiredBucket);
+			}
+		}
+
+		private void increment(final long nowSecond)
+		{
+			final int i = (int) (nowSecond % windowSizeSeconds);
+			Bucket bucket = buckets.get(i);
+			while (bucket.second < nowSecond)
+			{
+				final Bucket newBucket = new Bucket(nowSecond);
+				if (buckets.compareAndSet(i, bucket, newBucket))
+				{
+					bucket = newBucket;
+				}
+				else
+				{
+					bucket = buckets.get(i);
+				}
+			}
+
+			bucket.count.increment();
+		}
+
+		private long sum(final long nowSecond)
+		{
+			long sum = 0;
+			for (int i = 0; i < windowSizeSeconds; i++)
+			{
+				final Bucket bucket = buckets.get(i);
+				if (nowSecond - bucket.second < windowSizeSeconds)
+				{
+					sum += bucket.count.sum();
+				}
+			}
+
+			return sum;
+		}
+	}
+
+	private static final class StatusCounters
+	{
+		private final LongAdder total = new LongAdder();
+		private final ConcurrentMap<String, LongAdder> countsByRootCause = new ConcurrentHashMap<>();
+		private final SlidingWindowCounter window;
+
+		private StatusCounters(final int windowSizeSeconds)
+		{
+			this.window = new SlidingWindowCounter(windowSizeSeconds);
+		}
+	}
+
+	private final int windowSizeSeconds;
+	private final LongSupplier nanoTimeSource;
+	private final long startNanoTime;
+
+	/*
+	 * Indexed by (status - MIN_ERROR_STATUS), lazily initialized
+	 */
+	private final AtomicReferenceArray<StatusCounters> countersByStatus = new AtomicReferenceArray<>(MAX_ERROR_STATUS - MIN_ERROR_STATUS + 1);
+
+	/**
+	 * Constructor
+	 *
+	 * @param windowSizeSeconds
+	 *            size (in seconds) of the sliding window over which error rates are computed. Negative or zero values not allowed.
+	 */
+	@ConstructorProperties({ "windowSizeSeconds" })
+	public ErrorStatistics(final int windowSizeSeconds)
+	{
+		this(windowSizeSeconds, System::nanoTime);
+	}
+
+	/*
+	 * Constructor with custom time source (for tests)
+	 */
+	ErrorStatistics(final int windowSizeSeconds, final LongSupplier nanoTimeSource)
+	{
+		if (windowSizeSeconds <= 0)
+		{
+			throw new IllegalArgumentException("Invalid window size: " + windowSizeSeconds + ". Expected > 0.");
+		}
+
+		this.windowSizeSeconds = windowSizeSeconds;
+		this.nanoTimeSource = nanoTimeSource;
+		this.startNanoTime = nanoTimeSource.getAsLong();
+	}
+
+	/**
+	 * Default constructor, with a sliding window of 60 seconds
+	 */
+	public ErrorStatistics()
+	{
+		this(60);
+	}
+
+	private long nowSecond()
+	{
+		return TimeUnit.NANOSECONDS.toSeconds(nanoTimeSource.getAsLong() - startNanoTime);
+	}
+
+	private static String getRootCauseClassName(final Throwable exception)
+	{
+		if (exception == null)
+		{
+			return NO_ROOT_CAUSE;
+		}
+
+		// walk the cause chain, stopping at the first already visited cause if the chain is cyclic
+		final Throwable[] visited = new Throwable[MAX_CAUSE_DEPTH];
+		int numOfVisited = 0;
+		Throwable rootCause = exception;
+		walk: while (numOfVisited < visited.length)
+		{
+			visited[numOfVisited++] = rootCause;
+			final Throwable cause = rootCause.getCause();
+			if (cause == null)
+			{
+				break;
+			}
+
+			for (int i = 0; i < numOfVisited; i++)
+			{
+				if (visited[i] == cause)
+				{
+					break walk;
+				}
+			}
+
+			rootCause = cause;
+		}
+
+		return rootCause.getClass().getName();
+	}
+
+	/**
+	 * Records an error response
+	 *
+	 * @param status
+	 *            HTTP status code of the response. Ignored if not in the 4xx-5xx range.
+	 * @param exception
+	 *            exception mapped to the response, whose root cause class is counted (may be null)
+	 */
+	public void record(final int status, final Throwable exception)
+	{
+		if (status < MIN_ERROR_STATUS || status > MAX_ERROR_STATUS)
+		{
+			return;
+		}
+
+		final int index = status - MIN_ERROR_STATUS;
+		StatusCounters counters = countersByStatus.get(index);
+		if (counters == null)
+		{
+			countersByStatus.compareAndSet(index, null, new StatusCounters(windowSizeSeconds));
+			counters = countersByStatus.get(index);
+		}
+
+		counters.total.increment();
+		counters.countsByRootCause.computeIfAbsent(getRootCauseClassName(exception), k -> new LongAdder()).increment();
+		counters.window.increment(nowSecond());
+	}
+
+	/**
+	 * Gets a snapshot of the statistics as JSON, e.g.
+	 *
+	 * <pre>
+	 * {"windowSizeSeconds": 60, "errors": [{"status": 400, "count": 12, "ratePerSecond": 0.05, "rootCauses": {"org.json.JSONException": 12}}]}
+	 * </pre>
+	 *
+	 * where {@code count} is the total since startup and {@code ratePerSecond} is the average rate over the sliding window.
+	 *
+	 * @return statistics
+	 */
+	public JSONObject toJson()
+	{
+		final long nowSecond = nowSecond();
+		final JSONArray errors = new JSONArray();
+		for (int i = 0; i < countersByStatus.length(); i++)
+		{
+			final StatusCounters counters = countersByStatus.get(i);
+			if (counters == null)
+			{
+				continue;
+			}
+
+			final JSONObject rootCauses = new JSONObject();
+			for (final Map.Entry<String, LongAdder> rootCauseCount : counters.countsByRootCause.entrySet())
+			{
+				rootCauses.put(rootCauseCount.getKey(), rootCauseCount.getValue().sum());
+			}
+
+			errors.put(new JSONObject().put("status", MIN_ERROR_STATUS + i).put("count", counters.total.sum())
+			        .put("ratePerSecond", (double) counters.window.sum(nowSecond) / windowSizeSeconds).put("rootCauses", rootCauses));
+		}
+
+		return new JSONObject().put("windowSizeSeconds", windowSizeSeconds).put("errors", errors);
+	}
+}
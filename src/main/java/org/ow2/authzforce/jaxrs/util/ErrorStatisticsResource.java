@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import org.json.JSONObject;
+
+/**
+ * JAX-RS resource exposing {@link ErrorStatistics} as JSON (requires {@link JsonRiJaxrsProvider})
+ * <p>
+ * Security warning: the statistics include the class names of internal exceptions (root causes of errors), which reveal implementation details to clients. This resource must be protected by access
+ * control or mounted on an admin-only path, never exposed on the public API.
+ */
+@Path("error-statistics")
+public final class ErrorStatisticsResource
+{
+	private final ErrorStatistics errorStatistics;
+
+	/**
+	 * Constructor
+	 *
+	 * @param errorStatistics
+	 *            error statistics, shared with the exception mappers
+	 */
+	public ErrorStatisticsResource(final ErrorStatistics errorStatistics)
+	{
+		if (errorStatistics == null)
+		{
+			throw new IllegalArgumentException("Undefined error statistics");
+		}
+
+		this.errorStatistics = errorStatistics;
+	}
+
+	/**
+	 * Gets the error statistics
+	 *
+	 * @return statistics as JSON, see {@link ErrorStatistics#toJson()}
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public JSONObject getStatistics()
+	{
+		return errorStatistics.toJson();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.beans.ConstructorProperties;
+import java.io.InputStream;
+
+/**
+ * Limits on a whole JSON document, as opposed to the per-string/per-level limits of {@link JsonRiJaxrsProvider#JsonRiJaxrsProvider(java.util.Map, int, int, int)}, checked while the JSON input is
+ * read by the parser. Exceeding one of these limits results in a 413 (Request Entity Too Large) response. The limits on the document structure are optional, a budget may consist of the shared
+ * memory budget only.
+ */
+public final class JsonDocumentBudget
+{
+	private final int maxNumOfNodes;
+	private final int maxTotalKeySize;
+	private final int maxTotalStringSize;
+	private final JsonParsingMemoryBudget sharedMemoryBudget;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxNumOfNodes
+	 *            allowed maximum number of nodes (objects, arrays, strings and other values) in the JSON document. Negative or zero values not allowed.
+	 * @param maxTotalKeySize
+	 *            allowed maximum total size (in UTF-8 bytes, as encoded in the input) of all JSON keys in the JSON document. Negative or zero values not allowed.
+	 * @param maxTotalStringSize
+	 *            allowed maximum total size (in UTF-8 bytes, as encoded in the input) of all string values (and unquoted values) in the JSON document. Negative or zero values not allowed.
+	 * @param sharedMemoryBudget
+	 *            memory budget shared with concurrent parsings; null iff none
+	 */
+	@ConstructorProperties({ "maxNumOfNodes", "maxTotalKeySize", "maxTotalStringSize", "sharedMemoryBudget" })
+	public JsonDocumentBudget(final int maxNumOfNodes, final int maxTotalKeySize, final int maxTotalStringSize, final JsonParsingMemoryBudget sharedMemoryBudget)
+	{
+		if (maxNumOfNodes <= 0 || maxTotalKeySize <= 0 || maxTotalStringSize <= 0)
+		{
+			throw new IllegalArgumentException("one of the arguments maxNumOfNodes, maxTotalKeySize or maxTotalStringSize is negative or null");
+		}
+
+		this.maxNumOfNodes = maxNumOfNodes;
+		this.maxTotalKeySize = maxTotalKeySize;
+		this.maxTotalStringSize = maxTotalStringSize;
+		this.sharedMemoryBudget = sharedMemoryBudget;
+	}
+
+	/**
+	 * Constructs a budget without limits on the document structure, only the shared memory budget applies
+	 *
+	 * @param sharedMemoryBudget
+	 *            memory budget shared with concurrent parsings
+	 */
+	@ConstructorProperties({ "sharedMemoryBudget" })
+	public JsonDocumentBudget(final JsonParsingMemoryBudget sharedMemoryBudget)
+	{
+		if (sharedMemoryBudget == null)
+		{
+			throw new IllegalArgumentException("Undefined sharedMemoryBudget");
+		}
+
+		// the counters of the input stream are long values, so these limits are never exceeded
+		this.maxNumOfNodes = Integer.MAX_VALUE;
+		this.maxTotalKeySize = Integer.MAX_VALUE;
+		this.maxTotalStringSize = Integer.MAX_VALUE;
+		this.sharedMemoryBudget = sharedMemoryBudget;
+	}
+
+	BudgetCheckingInputStream newInputStream(final InputStream in)
+	{
+		return new BudgetCheckingInputStream(in, maxNumOfNodes, maxTotalKeySize, maxTotalStringSize, sharedMemoryBudget);
+	}
+}
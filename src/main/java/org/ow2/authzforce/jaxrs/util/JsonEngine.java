@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JSON parser/serializer used by {@link JsonRiJaxrsProvider} (SPI). Implementations must accept and reject exactly the same inputs as {@link OrgJsonEngine} (the default implementation), and throw the
+ * same types of exception, so that the provider behaves the same whatever the engine. Implementations must be thread-safe.
+ */
+public interface JsonEngine
+{
+	/**
+	 * Parses a JSON object without any limit on JSON structures
+	 *
+	 * @param input
+	 *            UTF-8-encoded JSON input
+	 * @return JSON object
+	 * @throws JSONException
+	 *             invalid JSON object
+	 */
+	JSONObject parse(InputStream input) throws JSONException;
+
+	/**
+	 * Parses a JSON object while checking limits on JSON structures, in order to mitigate content-level attacks
+	 *
+	 * @param input
+	 *            UTF-8-encoded JSON input
+	 * @param maxJsonStringSize
+	 *            allowed maximum size of JSON keys and string values
+	 * @param maxNumOfImmediateChildren
+	 *            allowed maximum number of keys (therefore key-value pairs) in JSON object, or items in JSON array
+	 * @param maxDepth
+	 *            allowed maximum depth of JSON object
+	 * @return JSON object
+	 * @throws JSONException
+	 *             invalid JSON object
+	 * @throws IllegalArgumentException
+	 *             one of the limits is exceeded
+	 */
+	JSONObject parse(InputStream input, int maxJsonStringSize, int maxNumOfImmediateChildren, int maxDepth) throws JSONException, IllegalArgumentException;
+
+	/**
+	 * Serializes a JSON object and closes the output
+	 *
+	 * @param jsonObject
+	 *            JSON object
+	 * @param output
+	 *            output where the UTF-8-encoded JSON is written
+	 * @throws IOException
+	 *             error writing to {@code output}
+	 */
+	void write(JSONObject jsonObject, OutputStream output) throws IOException;
+}
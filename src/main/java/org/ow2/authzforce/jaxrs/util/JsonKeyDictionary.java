@@ -0,0 +1,327 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.beans.ConstructorProperties;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.everit.json.schema.ArraySchema;
+import org.everit.json.schema.CombinedSchema;
+import org.everit.json.schema.ConditionalSchema;
+import org.everit.json.schema.NotSchema;
+import org.everit.json.schema.ObjectSchema;
+import org.everit.json.schema.ReferenceSchema;
+import org.everit.json.schema.Schema;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Table of canonical {@link String} instances for JSON member names, used by {@link OrgJsonEngine} to deduplicate member names repeated across parsed JSON documents, such as XACML/JSON member names
+ * ({@code Request}, {@code Category}, {@code Attribute}, etc.). The table is seeded with the property names defined in given JSON schemas. Other member names are kept in a bounded cache where a new
+ * name replaces the one with the same hash slot, so that member names of unexpected documents cannot fill the table permanently. String values are never added to the table. Thread-safe.
+ */
+public final class JsonKeyDictionary
+{
+	/*
+	 * Longer member names are not worth caching
+	 */
+	private static final int MAX_UNKNOWN_KEY_LENGTH = 128;
+
+	/*
+	 * Seeded keys in an open-addressing hash table (linear probing), for lookups by CharSequence without allocating a String. Immutable.
+	 */
+	private final String[] seededKeys;
+	private final int seededKeysMask;
+
+	/*
+	 * Unknown (not seeded) keys in a direct-mapped cache: a key replaces the one in the same slot. Concurrent writes to the same slot are benign (Strings are immutable): the loser's key is just not
+	 * cached.
+	 */
+	private final String[] unknownKeys;
+	private final int unknownKeysMask;
+
+	// getPatternProperties() is deprecated but its replacement getRegexpPatternProperties() is not public in everit-json-schema 1.14.3
+	@SuppressWarnings("deprecation")
+	private static Set<String> getPropertyNames(final Collection<? extends Schema> schemas)
+	{
+		final Set<String> propertyNames = new HashSet<>();
+		final Set<Schema> visitedSchemas = Collections.newSetFromMap(new IdentityHashMap<>());
+		final Deque<Schema> schemasToVisit = new ArrayDeque<>(schemas);
+		while (!schemasToVisit.isEmpty())
+		{
+			final Schema schema = schemasToVisit.pop();
+			// (ReferenceSchemas may be recursive)
+			if (!visitedSchemas.add(schema))
+			{
+				continue;
+			}
+
+			// not a HashSet: Schema#hashCode() does not terminate on recursive schemas
+			final List<Schema> subschemas = new ArrayList<>();
+			if (schema instanceof ObjectSchema objectSchema)
+			{
+				propertyNames.addAll(objectSchema.getPropertySchemas().keySet());
+				subschemas.addAll(objectSchema.getPropertySchemas().values());
+				subschemas.addAll(objectSchema.getPatternProperties().values());
+				subschemas.addAll(objectSchema.getSchemaDependencies().values());
+				subschemas.add(objectSchema.getSchemaOfAdditionalProperties());
+			}
+			else if (schema instanceof ArraySchema arraySchema)
+			{
+				subschemas.add(arraySchema.getAllItemSchema());
+				if (arraySchema.getItemSchemas() != null)
+				{
+					subschemas.addAll(arraySchema.getItemSchemas());
+				}
+
+				subschemas.add(arraySchema.getSchemaOfAdditionalItems());
+				subschemas.add(arraySchema.getContainedItemSchema());
+			}
+			else if (schema instanceof CombinedSchema combinedSchema)
+			{
+				subschemas.addAll(combinedSchema.getSubschemas());
+			}
+			else if (schema instanceof ReferenceSchema referenceSchema)
+			{
+				subschemas.add(referenceSchema.getReferredSchema());
+			}
+			else if (schema instanceof NotSchema notSchema)
+			{
+				subschemas.add(notSchema.getMustNotMatch());
+			}
+			else if (schema instanceof ConditionalSchema conditionalSchema)
+			{
+				conditionalSchema.getIfSchema().ifPresent(subschemas::add);
+				conditionalSchema.getThenSchema().ifPresent(subschemas::add);
+				conditionalSchema.getElseSchema().ifPresent(subschemas::add);
+			}
+
+			for (final Schema subschema : subschemas)
+			{
+				if (subschema != null)
+				{
+					schemasToVisit.push(subschema);
+				}
+			}
+		}
+
+		return propertyNames;
+	}
+
+	private static int indexOf(final int hash, final int mask)
+	{
+		// spread the high bits like HashMap
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private static int hash(final CharSequence chars)
+	{
+		// same as String#hashCode()
+		int h = 0;
+		for (int i = 0; i < chars.length(); i++)
+		{
+			h = 31 * h + chars.charAt(i);
+		}
+
+		return h;
+	}
+
+	private static boolean contentEquals(final String s, final CharSequence chars)
+	{
+		if (s.length() != chars.length())
+		{
+			return false;
+		}
+
+		for (int i = 0; i < s.length(); i++)
+		{
+			if (s.charAt(i) != chars.charAt(i))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param schemas
+	 *            JSON schemas whose property names (at any level) are added to the table
+	 * @param maxNumOfUnknownKeys
+	 *            maximum number of member names, other than the schemas' property names, that may be cached at the same time (rounded down to a power of two). Negative values not allowed; zero
+	 *            disables the cache.
+	 */
+	@ConstructorProperties({ "schemas", "maxNumOfUnknownKeys" })
+	public JsonKeyDictionary(final Collection<? extends Schema> schemas, final int maxNumOfUnknownKeys)
+	{
+		if (schemas == null)
+		{
+			throw new IllegalArgumentException("Undefined schemas");
+		}
+
+		if (maxNumOfUnknownKeys < 0)
+		{
+			throw new IllegalArgumentException("Invalid maxNumOfUnknownKeys: " + maxNumOfUnknownKeys + ". Expected >= 0.");
+		}
+
+		final Set<String> propertyNames = getPropertyNames(schemas);
+		// load factor <= 0.5
+		final int tableSize = Integer.highestOneBit(Math.max(propertyNames.size(), 1) * 2) << 1;
+		this.seededKeys = new String[tableSize];
+		this.seededKeysMask = tableSize - 1;
+		for (final String propertyName : propertyNames)
+		{
+			int i = indexOf(propertyName.hashCode(), seededKeysMask);
+			while (seededKeys[i] != null)
+			{
+				i = (i + 1) & seededKeysMask;
+			}
+
+			seededKeys[i] = propertyName;
+		}
+
+		final int unknownKeysTableSize = Integer.highestOneBit(maxNumOfUnknownKeys);
+		this.unknownKeys = new String[unknownKeysTableSize];
+		this.unknownKeysMask = unknownKeysTableSize - 1;
+	}
+
+	private String getSeededKey(final CharSequence chars, final int hash)
+	{
+		int i = indexOf(hash, seededKeysMask);
+		String key;
+		while ((key = seededKeys[i]) != null)
+		{
+			if (contentEquals(key, chars))
+			{
+				return key;
+			}
+
+			i = (i + 1) & seededKeysMask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the canonical instance of a string if it is one of the seeded keys (schemas' property names), without adding anything to the table. To be used for string values.
+	 *
+	 * @param chars
+	 *            string characters (may be a reusable buffer)
+	 * @return canonical instance if {@code chars} is a seeded key; else null
+	 */
+	String getSeededKey(final CharSequence chars)
+	{
+		return getSeededKey(chars, hash(chars));
+	}
+
+	/**
+	 * Gets the canonical instance of a member name, caching it if it is not a seeded key
+	 *
+	 * @param chars
+	 *            member name characters (may be a reusable buffer)
+	 * @return canonical instance if {@code chars} is a seeded or cached key; else a new String
+	 */
+	String getCanonical(final CharSequence chars)
+	{
+		final int hash = hash(chars);
+		final String seededKey = getSeededKey(chars, hash);
+		if (seededKey != null)
+		{
+			return seededKey;
+		}
+
+		if (unknownKeys.length == 0 || chars.length() > MAX_UNKNOWN_KEY_LENGTH)
+		{
+			return chars.toString();
+		}
+
+		final int i = indexOf(hash, unknownKeysMask);
+		final String cachedKey = unknownKeys[i];
+		if (cachedKey != null && contentEquals(cachedKey, chars))
+		{
+			return cachedKey;
+		}
+
+		final String key = chars.toString();
+		unknownKeys[i] = key;
+		return key;
+	}
+
+	/*
+	 * Number of unknown keys currently cached (for tests)
+	 */
+	int getNumOfUnknownKeys()
+	{
+		int numOfUnknownKeys = 0;
+		for (final String key : unknownKeys)
+		{
+			if (key != null)
+			{
+				numOfUnknownKeys++;
+			}
+		}
+
+		return numOfUnknownKeys;
+	}
+
+	/**
+	 * Replaces the keys of a (parsed) JSON object and all its descendants with their canonical instances
+	 *
+	 * @param jsonObject
+	 *            JSON object
+	 */
+	void canonicalizeKeys(final JSONObject jsonObject)
+	{
+		for (final String key : jsonObject.keySet().toArray(new String[0]))
+		{
+			final String canonicalKey = getCanonical(key);
+			final Object value = canonicalKey == key ? jsonObject.get(key) : jsonObject.remove(key);
+			if (canonicalKey != key)
+			{
+				jsonObject.put(canonicalKey, value);
+			}
+
+			canonicalizeKeysOfValue(value);
+		}
+	}
+
+	private void canonicalizeKeysOfValue(final Object value)
+	{
+		if (value instanceof JSONObject jsonObject)
+		{
+			canonicalizeKeys(jsonObject);
+		}
+		else if (value instanceof JSONArray jsonArray)
+		{
+			for (final Object item : jsonArray)
+			{
+				canonicalizeKeysOfValue(item);
+			}
+		}
+	}
+}
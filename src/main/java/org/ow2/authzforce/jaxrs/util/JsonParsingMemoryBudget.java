@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget shared by concurrent JSON parsings (typically process-wide, i.e. shared by all {@link JsonDocumentBudget}s), in bytes of JSON input being parsed. Each parsing acquires as many bytes
+ * as it reads from the input, and releases them all when parsing is over. When the budget is exhausted, parsing fails and the client gets a 503 (Service Unavailable) response, except if the
+ * document alone exceeds the capacity, in which case the client gets a 413 (Request Entity Too Large) response. Use {@link JsonDocumentBudget#JsonDocumentBudget(JsonParsingMemoryBudget)} to apply
+ * this budget without per-document limits. Thread-safe.
+ */
+public final class JsonParsingMemoryBudget
+{
+	private final long capacity;
+	private final AtomicLong available;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            maximum number of JSON input bytes being parsed at any time, all parsings considered. Negative or zero values not allowed.
+	 */
+	@ConstructorProperties({ "capacity" })
+	public JsonParsingMemoryBudget(final long capacity)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("Invalid capacity: " + capacity + ". Expected > 0.");
+		}
+
+		this.capacity = capacity;
+		this.available = new AtomicLong(capacity);
+	}
+
+	/**
+	 * Gets the maximum number of JSON input bytes being parsed at any time
+	 *
+	 * @return capacity
+	 */
+	public long getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of bytes currently available
+	 *
+	 * @return available bytes
+	 */
+	public long getAvailable()
+	{
+		return available.get();
+	}
+
+	boolean tryAcquire(final long numOfBytes)
+	{
+		long current;
+		do
+		{
+			current = available.get();
+			if (current < numOfBytes)
+			{
+				return false;
+			}
+		}
+		while (!available.compareAndSet(current, current - numOfBytes));
+
+		return true;
+	}
+
+	void release(final long numOfBytes)
+	{
+		available.addAndGet(numOfBytes);
+	}
+}
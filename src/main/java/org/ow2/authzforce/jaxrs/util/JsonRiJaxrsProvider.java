@@ -20,7 +20,6 @@ package org.ow2.authzforce.jaxrs.util;
 import java.io.*;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -41,7 +40,6 @@ import org.everit.json.schema.ValidationException;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
-import org.ow2.authzforce.xacml.json.model.LimitsCheckingJSONObject;
 
 /**
  * JAX-RS entity provider for {@link JSONObject} input/output
@@ -61,9 +59,16 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 
 	private static class BaseJsonObjectFactory implements JsonObjectFactory
 	{
+		protected final JsonEngine jsonEngine;
+
+		private BaseJsonObjectFactory(final JsonEngine jsonEngine)
+		{
+			this.jsonEngine = jsonEngine;
+		}
+
 		protected JSONObject parse(final InputStream entityStream)
 		{
-			return new JSONObject(new JSONTokener(entityStream));
+			return jsonEngine.parse(entityStream);
 		}
 
 		protected void schemaValidate(final JSONObject jsonObj)
@@ -81,8 +86,11 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 
 	}
 
-	private static final JsonObjectFactory DEFAULT_JSON_TOKENER_FACTORY = new BaseJsonObjectFactory();
+	private static final JsonEngine DEFAULT_JSON_ENGINE = new OrgJsonEngine();
 
+	private static final JsonObjectFactory DEFAULT_JSON_TOKENER_FACTORY = new BaseJsonObjectFactory(DEFAULT_JSON_ENGINE);
+
+	private final JsonEngine jsonEngine;
 	private final JsonObjectFactory jsonObjectFactory;
 
 	/**
@@ -90,6 +98,7 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 	 */
 	public JsonRiJaxrsProvider()
 	{
+		jsonEngine = DEFAULT_JSON_ENGINE;
 		jsonObjectFactory = DEFAULT_JSON_TOKENER_FACTORY;
 	}
 
@@ -102,7 +111,8 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 	 */
 	public JsonRiJaxrsProvider(final Schema schema)
 	{
-		jsonObjectFactory = schema == null ? DEFAULT_JSON_TOKENER_FACTORY : new BaseJsonObjectFactory()
+		jsonEngine = DEFAULT_JSON_ENGINE;
+		jsonObjectFactory = schema == null ? DEFAULT_JSON_TOKENER_FACTORY : new BaseJsonObjectFactory(DEFAULT_JSON_ENGINE)
 		{
 
 			@Override
@@ -125,7 +135,29 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 	 */
 	public JsonRiJaxrsProvider(final Map<String, Schema> schemasByPropertyName)
 	{
-		jsonObjectFactory = schemasByPropertyName == null || schemasByPropertyName.isEmpty() ? DEFAULT_JSON_TOKENER_FACTORY : new BaseJsonObjectFactory()
+		this(schemasByPropertyName, DEFAULT_JSON_ENGINE);
+	}
+
+	/**
+	 * Constructs JSON provider using a given {@link JsonEngine} without limits checking, with validation against a given schema depending on the input JSON root property. Only for trusted
+	 * environments or protected by JSON-threat-mitigating proxy (e.g. WAF as in Web Application Firewall).
+	 * 
+	 * @param schemasByPropertyName
+	 *            mappings of JSON property names to schemas, defining which schema to apply according to which (root) property the input JSON object has; if {@code schemasByPropertyName} is empty, or
+	 *            {@code schemasByPropertyName} does not contain any schema for the input JSON (root) property, no schema validation shall occur. Any input JSON without any root property is considered
+	 *            invalid.
+	 * @param jsonEngine
+	 *            JSON parser/serializer
+	 */
+	public JsonRiJaxrsProvider(final Map<String, Schema> schemasByPropertyName, final JsonEngine jsonEngine)
+	{
+		if (jsonEngine == null)
+		{
+			throw new IllegalArgumentException("Undefined JSON engine");
+		}
+
+		this.jsonEngine = jsonEngine;
+		jsonObjectFactory = schemasByPropertyName == null || schemasByPropertyName.isEmpty() ? new BaseJsonObjectFactory(jsonEngine) : new BaseJsonObjectFactory(jsonEngine)
 		{
 
 			@Override
@@ -155,18 +187,35 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 		private final int maxJsonStringSize;
 		private final int maxNumOfImmediateChildren;
 		private final int maxDepth;
+		private final JsonDocumentBudget documentBudget;
 
-		private LimitsCheckingJsonObjectFactory(final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth)
+		private LimitsCheckingJsonObjectFactory(final JsonEngine jsonEngine, final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth,
+		        final JsonDocumentBudget documentBudget)
 		{
+			super(jsonEngine);
 			this.maxJsonStringSize = maxJsonStringSize;
 			this.maxNumOfImmediateChildren = maxNumOfImmediateChildren;
 			this.maxDepth = maxDepth;
+			this.documentBudget = documentBudget;
 		}
 
 		@Override
 		protected final JSONObject parse(final InputStream entityStream)
 		{
-			return new LimitsCheckingJSONObject(new InputStreamReader(entityStream, StandardCharsets.UTF_8), maxJsonStringSize, maxNumOfImmediateChildren, maxDepth);
+			if (documentBudget == null)
+			{
+				return jsonEngine.parse(entityStream, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth);
+			}
+
+			final BudgetCheckingInputStream budgetCheckingStream = documentBudget.newInputStream(entityStream);
+			try
+			{
+				return jsonEngine.parse(budgetCheckingStream, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth);
+			}
+			finally
+			{
+				budgetCheckingStream.releaseMemory();
+			}
 		}
 
 	}
@@ -191,8 +240,9 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 		{
 			throw new IllegalArgumentException("one of the arguments maxJsonStringSize, maxNumOfImmediateChildren or maxDepth is negative or null");
 		}
-		jsonObjectFactory = schema == null ? new LimitsCheckingJsonObjectFactory(maxJsonStringSize, maxNumOfImmediateChildren, maxDepth)
-		        : new LimitsCheckingJsonObjectFactory(maxJsonStringSize, maxNumOfImmediateChildren, maxDepth)
+		jsonEngine = DEFAULT_JSON_ENGINE;
+		jsonObjectFactory = schema == null ? new LimitsCheckingJsonObjectFactory(DEFAULT_JSON_ENGINE, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth, null)
+		        : new LimitsCheckingJsonObjectFactory(DEFAULT_JSON_ENGINE, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth, null)
 		        {
 			        @Override
 			        protected void schemaValidate(final JSONObject jsonObj) throws ValidationException
@@ -220,14 +270,69 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 	 *            allowed maximum depth of JSON object. Negative or zero values not allowed.
 	 */
 	public JsonRiJaxrsProvider(final Map<String, Schema> schemasByPropertyName, final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth)
+	{
+		this(schemasByPropertyName, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth, DEFAULT_JSON_ENGINE);
+	}
+
+	/**
+	 * Constructs JSON provider using a given {@link JsonEngine} with limits checking on JSON structures, such as arrays and strings, in order to mitigate content-level attacks. This provider also
+	 * validates input JSON against a given schema depending on the input JSON root property.
+	 * 
+	 * @param schemasByPropertyName
+	 *            mappings of JSON property names to schemas, defining which schema to apply according to which (root) property the input JSON object has; if {@code schemasByPropertyName} is empty, or
+	 *            {@code schemasByPropertyName} does not contain any schema for the input JSON (root) property, no schema validation shall occur. Any input JSON without any root property is considered
+	 *            invalid.
+	 * 
+	 * @param maxJsonStringSize
+	 *            allowed maximum size of JSON keys and string values. Negative or zero values not allowed.
+	 * @param maxNumOfImmediateChildren
+	 *            allowed maximum number of keys (therefore key-value pairs) in JSON object, or items in JSON array. Negative or zero values not allowed.
+	 * @param maxDepth
+	 *            allowed maximum depth of JSON object. Negative or zero values not allowed.
+	 * @param jsonEngine
+	 *            JSON parser/serializer
+	 */
+	public JsonRiJaxrsProvider(final Map<String, Schema> schemasByPropertyName, final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth, final JsonEngine jsonEngine)
+	{
+		this(schemasByPropertyName, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth, null, jsonEngine);
+	}
+
+	/**
+	 * Constructs JSON provider using a given {@link JsonEngine} with limits checking on JSON structures, such as arrays and strings, and on the whole JSON document, in order to mitigate content-level
+	 * attacks. This provider also validates input JSON against a given schema depending on the input JSON root property.
+	 * 
+	 * @param schemasByPropertyName
+	 *            mappings of JSON property names to schemas, defining which schema to apply according to which (root) property the input JSON object has; if {@code schemasByPropertyName} is empty, or
+	 *            {@code schemasByPropertyName} does not contain any schema for the input JSON (root) property, no schema validation shall occur. Any input JSON without any root property is considered
+	 *            invalid.
+	 * 
+	 * @param maxJsonStringSize
+	 *            allowed maximum size of JSON keys and string values. Negative or zero values not allowed.
+	 * @param maxNumOfImmediateChildren
+	 *            allowed maximum number of keys (therefore key-value pairs) in JSON object, or items in JSON array. Negative or zero values not allowed.
+	 * @param maxDepth
+	 *            allowed maximum depth of JSON object. Negative or zero values not allowed.
+	 * @param documentBudget
+	 *            limits on the whole JSON document (total number of nodes, total size of keys/strings, shared memory budget); null iff no such limit
+	 * @param jsonEngine
+	 *            JSON parser/serializer
+	 */
+	public JsonRiJaxrsProvider(final Map<String, Schema> schemasByPropertyName, final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth,
+	        final JsonDocumentBudget documentBudget, final JsonEngine jsonEngine)
 	{
 		if (maxJsonStringSize <= 0 || maxNumOfImmediateChildren <= 0 || maxDepth <= 0)
 		{
 			throw new IllegalArgumentException("one of the arguments maxJsonStringSize, maxNumOfImmediateChildren or maxDepth is negative or null");
 		}
 
-		jsonObjectFactory = schemasByPropertyName == null || schemasByPropertyName.isEmpty() ? new LimitsCheckingJsonObjectFactory(maxJsonStringSize, maxNumOfImmediateChildren, maxDepth)
-		        : new LimitsCheckingJsonObjectFactory(maxJsonStringSize, maxNumOfImmediateChildren, maxDepth)
+		if (jsonEngine == null)
+		{
+			throw new IllegalArgumentException("Undefined JSON engine");
+		}
+
+		this.jsonEngine = jsonEngine;
+		jsonObjectFactory = schemasByPropertyName == null || schemasByPropertyName.isEmpty() ? new LimitsCheckingJsonObjectFactory(jsonEngine, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth, documentBudget)
+		        : new LimitsCheckingJsonObjectFactory(jsonEngine, maxJsonStringSize, maxNumOfImmediateChildren, maxDepth, documentBudget)
 		        {
 			        @Override
 			        protected void schemaValidate(final JSONObject jsonObj) throws ValidationException
@@ -267,10 +372,7 @@ public final class JsonRiJaxrsProvider implements MessageBodyReader<JSONObject>,
 	public void writeTo(final JSONObject o, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders,
 	        final OutputStream entityStream) throws IOException, WebApplicationException
 	{
-		try (OutputStreamWriter writer = new OutputStreamWriter(entityStream, StandardCharsets.UTF_8))
-		{
-			o.write(writer);
-		}
+		jsonEngine.write(o, entityStream);
 	}
 
 	@Override
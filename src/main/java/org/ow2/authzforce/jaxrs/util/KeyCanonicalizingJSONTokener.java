@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.io.InputStream;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+/**
+ * {@link JSONTokener} returning canonical instances from a {@link JsonKeyDictionary} for quoted strings, read into a buffer reused for the whole parsing, so that strings found in the dictionary's
+ * seeded keys are not allocated at all. Member names are cached in the dictionary, string values are not (only replaced with seeded keys if equal). Same syntax rules and errors as
+ * {@link JSONTokener#nextString(char)}.
+ * <p>
+ * Not thread-safe (one instance per parsing).
+ */
+final class KeyCanonicalizingJSONTokener extends JSONTokener
+{
+	private final JsonKeyDictionary keyDictionary;
+	private final StringBuilder buffer = new StringBuilder();
+
+	/*
+	 * True iff the quoted string being read is a value (JSONTokener#nextValue()), not a member name
+	 */
+	private boolean readingStringValue = false;
+
+	KeyCanonicalizingJSONTokener(final InputStream inputStream, final JsonKeyDictionary keyDictionary)
+	{
+		super(inputStream);
+		this.keyDictionary = keyDictionary;
+	}
+
+	@Override
+	public Object nextValue() throws JSONException
+	{
+		final char c = this.nextClean();
+		this.back();
+		if (c != '"' && c != '\'')
+		{
+			return super.nextValue();
+		}
+
+		readingStringValue = true;
+		try
+		{
+			return super.nextValue();
+		}
+		finally
+		{
+			readingStringValue = false;
+		}
+	}
+
+	@Override
+	public String nextString(final char quote) throws JSONException
+	{
+		buffer.setLength(0);
+		for (;;)
+		{
+			char c = this.next();
+			switch (c)
+			{
+				case 0:
+				case '\n':
+				case '\r':
+					throw this.syntaxError("Unterminated string");
+				case '\\':
+					c = this.next();
+					switch (c)
+					{
+						case 'b':
+							buffer.append('\b');
+							break;
+						case 't':
+							buffer.append('\t');
+							break;
+						case 'n':
+							buffer.append('\n');
+							break;
+						case 'f':
+							buffer.append('\f');
+							break;
+						case 'r':
+							buffer.append('\r');
+							break;
+						case 'u':
+							try
+							{
+								buffer.append((char) Integer.parseInt(this.next(4), 16));
+							}
+							catch (final NumberFormatException e)
+							{
+								throw this.syntaxError("Illegal escape.", e);
+							}
+							break;
+						case '"':
+						case '\'':
+						case '\\':
+						case '/':
+							buffer.append(c);
+							break;
+						default:
+							throw this.syntaxError("Illegal escape.");
+					}
+					break;
+				default:
+					if (c == quote)
+					{
+						if (!readingStringValue)
+						{
+							return keyDictionary.getCanonical(buffer);
+						}
+
+						final String seededKey = keyDictionary.getSeededKey(buffer);
+						return seededKey == null ? buffer.toString() : seededKey;
+					}
+					buffer.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.ow2.authzforce.xacml.json.model.LimitsCheckingJSONObject;
+
+/**
+ * Default {@link JsonEngine}, based on JSON reference implementation (org.json): {@link JSONTokener} for parsing without limits, {@link LimitsCheckingJSONObject} for parsing with limits, and
+ * {@link JSONObject#write(java.io.Writer)} for serialization.
+ */
+public final class OrgJsonEngine implements JsonEngine
+{
+	private final JsonKeyDictionary keyDictionary;
+
+	/**
+	 * Constructs the engine with a table of canonical strings, to deduplicate JSON member names in parsed JSON objects. Without limits checking, member names (and string values equal to seeded keys)
+	 * are read directly as canonical instances when possible. With limits checking ({@link LimitsCheckingJSONObject} does not allow customizing string parsing), only the member names are replaced with their
+	 * canonical instances after parsing, which reduces the retained size of parsed objects but not the allocations during parsing.
+	 * 
+	 * @param keyDictionary
+	 *            table of canonical strings; null iff no deduplication shall occur
+	 */
+	public OrgJsonEngine(final JsonKeyDictionary keyDictionary)
+	{
+		this.keyDictionary = keyDictionary;
+	}
+
+	/**
+	 * Constructs the engine without deduplication of JSON member names
+	 */
+	public OrgJsonEngine()
+	{
+		this(null);
+	}
+
+	@Override
+	public JSONObject parse(final InputStream input) throws JSONException
+	{
+		return new JSONObject(keyDictionary == null ? new JSONTokener(input) : new KeyCanonicalizingJSONTokener(input, keyDictionary));
+	}
+
+	@Override
+	public JSONObject parse(final InputStream input, final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth) throws JSONException, IllegalArgumentException
+	{
+		final JSONObject jsonObject = new LimitsCheckingJSONObject(new InputStreamReader(input, StandardCharsets.UTF_8), maxJsonStringSize, maxNumOfImmediateChildren, maxDepth);
+		if (keyDictionary != null)
+		{
+			// depth already limited by maxDepth
+			keyDictionary.canonicalizeKeys(jsonObject);
+		}
+
+		return jsonObject;
+	}
+
+	@Override
+	public void write(final JSONObject jsonObject, final OutputStream output) throws IOException
+	{
+		try (OutputStreamWriter writer = new OutputStreamWriter(output, StandardCharsets.UTF_8))
+		{
+			jsonObject.write(writer);
+		}
+	}
+
+}
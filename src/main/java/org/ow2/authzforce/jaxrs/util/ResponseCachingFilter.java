@@ -0,0 +1,306 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Filter and {@link WriterInterceptor} caching the serialized entities (and headers) of successful GET responses in a {@link SerializedResponseCache}. On cache hit, the request is aborted with the
+ * cached bytes as response entity and the cached headers, therefore no entity (object tree) is built by the resource and no {@link jakarta.ws.rs.ext.MessageBodyWriter} other than the one for byte
+ * arrays is involved. On cache miss, the bytes written by the {@link jakarta.ws.rs.ext.MessageBodyWriter} are copied to the cache on the way out.
+ * <p>
+ * The filter runs after authentication and authorization filters ({@link Priorities#AUTHORIZATION}), so that a cache hit is still subject to access control. Yet, the resource method does not run on
+ * cache hit, so if the response depends on the caller (user-specific content, access control in the resource method), the cache key must include the caller identity (user principal) or the relevant
+ * request headers, see {@link #ResponseCachingFilter(SerializedResponseCache, Collection, boolean)}.
+ * <p>
+ * Only 200 (OK) responses are cached, except if the response has a {@code Set-Cookie} or {@code Vary} header, or a {@code private}, {@code no-cache} or {@code no-store} Cache-Control directive.
+ * <p>
+ * Conditional requests ({@code If-None-Match}, {@code If-Modified-Since}, {@code If-Match} or {@code If-Unmodified-Since} header) are not served from the cache, since the preconditions are
+ * evaluated by the resource (e.g. 304 Not Modified response); their 200 responses are cached though.
+ */
+@Priority(Priorities.AUTHORIZATION + 1)
+public final class ResponseCachingFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor
+{
+	private static final String CACHE_MISS_PROPERTY_NAME = ResponseCachingFilter.class.getName() + ".miss";
+	private static final String CACHE_HIT_PROPERTY_NAME = ResponseCachingFilter.class.getName() + ".hit";
+
+	private static final String SET_COOKIE_HEADER = "Set-Cookie";
+	private static final String[] NON_CACHEABLE_CACHE_CONTROL_DIRECTIVES = { "private", "no-cache", "no-store" };
+	private static final String[] CONDITIONAL_REQUEST_HEADERS = { HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_MATCH, HttpHeaders.IF_UNMODIFIED_SINCE };
+
+	private record CacheMiss(SerializedResponseCache.Key key, long generation, Map<String, List<Object>> headers)
+	{
+	}
+
+	/**
+	 * Copies written bytes until the maximum entry size is exceeded
+	 */
+	private static final class CopyingOutputStream extends FilterOutputStream
+	{
+		private final int maxCopySize;
+		private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+		private CopyingOutputStream(final OutputStream out, final int maxCopySize)
+		{
+			super(out);
+			this.maxCopySize = maxCopySize;
+		}
+
+		private boolean canCopy(final int len)
+		{
+			if (copy == null)
+			{
+				return false;
+			}
+
+			if (copy.size() + len > maxCopySize)
+			{
+				// too big to be cached
+				copy = null;
+				return false;
+			}
+
+			return true;
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			out.write(b);
+			if (canCopy(1))
+			{
+				copy.write(b);
+			}
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			out.write(b, off, len);
+			if (canCopy(len))
+			{
+				copy.write(b, off, len);
+			}
+		}
+	}
+
+	private final SerializedResponseCache cache;
+	private final List<String> keyHeaderNames;
+	private final boolean keyByUserPrincipal;
+
+	/**
+	 * Constructs the filter with cache keys made of the request URI and the acceptable media types only. Only for responses that do not depend on the caller.
+	 *
+	 * @param cache
+	 *            cache of serialized responses, possibly shared with write endpoints (for invalidation)
+	 */
+	public ResponseCachingFilter(final SerializedResponseCache cache)
+	{
+		this(cache, Collections.emptyList(), false);
+	}
+
+	/**
+	 * Constructs the filter with cache keys made of the request URI, the acceptable media types, and given parts of the request
+	 *
+	 * @param cache
+	 *            cache of serialized responses, possibly shared with write endpoints (for invalidation)
+	 * @param keyHeaderNames
+	 *            names of the request headers whose values are part of the cache key (e.g. Accept-Language or a tenant header)
+	 * @param keyByUserPrincipal
+	 *            true iff the name of the user principal ({@link SecurityContext#getUserPrincipal()}) is part of the cache key, i.e. responses are cached per user
+	 */
+	public ResponseCachingFilter(final SerializedResponseCache cache, final Collection<String> keyHeaderNames, final boolean keyByUserPrincipal)
+	{
+		if (cache == null || keyHeaderNames == null)
+		{
+			throw new IllegalArgumentException("Undefined cache or keyHeaderNames");
+		}
+
+		this.cache = cache;
+		this.keyHeaderNames = List.copyOf(keyHeaderNames);
+		this.keyByUserPrincipal = keyByUserPrincipal;
+	}
+
+	private CharSequence getExtraKeyParts(final ContainerRequestContext requestContext)
+	{
+		if (keyHeaderNames.isEmpty() && !keyByUserPrincipal)
+		{
+			return "";
+		}
+
+		final StringBuilder keyParts = new StringBuilder();
+		for (final String headerName : keyHeaderNames)
+		{
+			keyParts.append('\n').append(headerName).append(':').append(requestContext.getHeaderString(headerName));
+		}
+
+		if (keyByUserPrincipal)
+		{
+			final SecurityContext securityContext = requestContext.getSecurityContext();
+			final Principal principal = securityContext == null ? null : securityContext.getUserPrincipal();
+			keyParts.append("\nprincipal:").append(principal == null ? null : principal.getName());
+		}
+
+		return keyParts;
+	}
+
+	private static boolean isConditional(final ContainerRequestContext requestContext)
+	{
+		for (final String headerName : CONDITIONAL_REQUEST_HEADERS)
+		{
+			if (requestContext.getHeaderString(headerName) != null)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isCacheable(final ContainerResponseContext responseContext)
+	{
+		if (responseContext.getStatus() != Response.Status.OK.getStatusCode() || !responseContext.hasEntity())
+		{
+			return false;
+		}
+
+		final MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+		if (headers.containsKey(SET_COOKIE_HEADER) || headers.containsKey(HttpHeaders.VARY))
+		{
+			return false;
+		}
+
+		final String cacheControl = responseContext.getHeaderString(HttpHeaders.CACHE_CONTROL);
+		if (cacheControl != null)
+		{
+			final String lowerCaseCacheControl = cacheControl.toLowerCase(Locale.ROOT);
+			for (final String directive : NON_CACHEABLE_CACHE_CONTROL_DIRECTIVES)
+			{
+				if (lowerCaseCacheControl.contains(directive))
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public void filter(final ContainerRequestContext requestContext)
+	{
+		if (!HttpMethod.GET.equals(requestContext.getMethod()))
+		{
+			return;
+		}
+
+		// get the generation before lookup, so that any invalidation occurring afterwards prevents caching the response
+		final long generation = cache.getGeneration();
+		final SerializedResponseCache.Key key = SerializedResponseCache.newKey(requestContext.getUriInfo().getRequestUri(), requestContext.getAcceptableMediaTypes(),
+		        getExtraKeyParts(requestContext));
+		final SerializedResponseCache.Entry entry = isConditional(requestContext) ? null : cache.get(key);
+		if (entry == null)
+		{
+			requestContext.setProperty(CACHE_MISS_PROPERTY_NAME, new CacheMiss(key, generation, null));
+			return;
+		}
+
+		// headers are replayed by the response filter, after the response filters of higher priority (which run again on hit) to override their values
+		requestContext.setProperty(CACHE_HIT_PROPERTY_NAME, entry);
+		requestContext.abortWith(Response.ok(entry.body, entry.mediaType).build());
+	}
+
+	@Override
+	public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext)
+	{
+		final Object cacheHit = requestContext.getProperty(CACHE_HIT_PROPERTY_NAME);
+		if (cacheHit instanceof SerializedResponseCache.Entry entry)
+		{
+			final MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+			entry.headers.forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+			return;
+		}
+
+		final Object cacheMiss = requestContext.getProperty(CACHE_MISS_PROPERTY_NAME);
+		if (!(cacheMiss instanceof CacheMiss miss))
+		{
+			return;
+		}
+
+		if (!isCacheable(responseContext))
+		{
+			requestContext.removeProperty(CACHE_MISS_PROPERTY_NAME);
+			return;
+		}
+
+		final Map<String, List<Object>> headers = new HashMap<>();
+		responseContext.getHeaders().forEach((name, values) -> {
+			// Content-Type is replayed from the cached media type, Content-Length is computed from the cached entity
+			if (!HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name) && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name))
+			{
+				headers.put(name, List.copyOf(values));
+			}
+		});
+		requestContext.setProperty(CACHE_MISS_PROPERTY_NAME, new CacheMiss(miss.key(), miss.generation(), Collections.unmodifiableMap(headers)));
+	}
+
+	@Override
+	public void aroundWriteTo(final WriterInterceptorContext context) throws IOException
+	{
+		final Object cacheMiss = context.getProperty(CACHE_MISS_PROPERTY_NAME);
+		// headers undefined iff the response filter has not run (yet)
+		if (!(cacheMiss instanceof CacheMiss miss) || miss.headers() == null)
+		{
+			context.proceed();
+			return;
+		}
+
+		final CopyingOutputStream out = new CopyingOutputStream(context.getOutputStream(), cache.getMaxEntrySize());
+		context.setOutputStream(out);
+		context.proceed();
+		if (out.copy != null)
+		{
+			cache.put(miss.key(), out.copy.toByteArray(), context.getMediaType(), miss.headers(), miss.generation());
+		}
+	}
+}
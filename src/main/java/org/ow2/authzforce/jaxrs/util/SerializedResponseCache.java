@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Size-bounded cache of serialized (encoded) HTTP response entities and headers, keyed by request URI, acceptable media types (which determine the negotiated media type) and optional extra key parts
+ * (see {@link ResponseCachingFilter}). Entries expire after a fixed time-to-live, and the least recently used entries are evicted first (approximately) when the maximum total size is reached. Write
+ * endpoints must call {@link #invalidate(URI)} (or {@link #invalidateAll()}) when they modify a cached resource.
+ * <p>
+ * Lookups are lock-free; only eviction is serialized. Thread-safe.
+ */
+public final class SerializedResponseCache
+{
+	/**
+	 * Cache key. {@code variant} is made of the raw query string, the acceptable media types and the extra key parts of the request.
+	 */
+	record Key(String path, String variant)
+	{
+	}
+
+	/**
+	 * Cached response
+	 */
+	static final class Entry
+	{
+		final byte[] body;
+		final MediaType mediaType;
+		/*
+		 * Response headers (other than Content-Type and Content-Length) to be replayed on hit. Immutable.
+		 */
+		final Map<String, List<Object>> headers;
+		final long expiryNanoTime;
+		volatile long lastAccessNanoTime;
+
+		private Entry(final byte[] body, final MediaType mediaType, final Map<String, List<Object>> headers, final long nanoTime, final long timeToLiveNanos)
+		{
+			this.body = body;
+			this.mediaType = mediaType;
+			this.headers = headers;
+			this.expiryNanoTime = nanoTime + timeToLiveNanos;
+			this.lastAccessNanoTime = nanoTime;
+		}
+	}
+
+	private record EvictionCandidate(Key key, Entry entry, long lastAccessNanoTime)
+	{
+	}
+
+	private final long maxTotalSize;
+	private final long evictionTargetSize;
+	private final int maxEntrySize;
+	private final long timeToLiveNanos;
+	private final LongSupplier nanoTimeSource;
+
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong totalSize = new AtomicLong(0);
+	private final Object evictionLock = new Object();
+
+	/*
+	 * Incremented on each invalidation, so that responses computed before an invalidation are not cached afterwards
+	 */
+	private final AtomicLong generation = new AtomicLong(0);
+
+	/**
+	 * Constructs the cache
+	 *
+	 * @param maxTotalSize
+	 *            maximum total size (in bytes) of all cached entities. Negative or zero values not allowed.
+	 * @param maxEntrySize
+	 *            maximum size (in bytes) of a single cached entity; larger entities are not cached. Negative or zero values not allowed.
+	 * @param timeToLive
+	 *            time after which a cached entity expires. Negative or zero values not allowed.
+	 */
+	public SerializedResponseCache(final long maxTotalSize, final int maxEntrySize, final Duration timeToLive)
+	{
+		this(maxTotalSize, maxEntrySize, timeToLive, System::nanoTime);
+	}
+
+	/*
+	 * Constructor with custom time source (for tests)
+	 */
+	SerializedResponseCache(final long maxTotalSize, final int maxEntrySize, final Duration timeToLive, final LongSupplier nanoTimeSource)
+	{
+		if (maxTotalSize <= 0 || maxEntrySize <= 0 || timeToLive == null || timeToLive.isNegative() || timeToLive.isZero())
+		{
+			throw new IllegalArgumentException("one of the arguments maxTotalSize, maxEntrySize or timeToLive is negative or null");
+		}
+
+		this.maxTotalSize = maxTotalSize;
+		// evict a batch of entries at once (down to 3/4 of the maximum) to make eviction less frequent
+		this.evictionTargetSize = maxTotalSize - maxTotalSize / 4;
+		this.maxEntrySize = maxEntrySize;
+		this.timeToLiveNanos = timeToLive.toNanos();
+		this.nanoTimeSource = nanoTimeSource;
+	}
+
+	static Key newKey(final URI requestUri, final List<MediaType> acceptableMediaTypes, final CharSequence extraKeyParts)
+	{
+		final String rawQuery = requestUri.getRawQuery();
+		return new Key(requestUri.getRawPath(), (rawQuery == null ? "" : rawQuery) + '\n' + acceptableMediaTypes + extraKeyParts);
+	}
+
+	int getMaxEntrySize()
+	{
+		return maxEntrySize;
+	}
+
+	long getGeneration()
+	{
+		return generation.get();
+	}
+
+	/**
+	 * Gets the total size of the cached entities
+	 *
+	 * @return total size (in bytes)
+	 */
+	public long getTotalSize()
+	{
+		return totalSize.get();
+	}
+
+	private void remove(final Key key, final Entry entry)
+	{
+		if (entries.remove(key, entry))
+		{
+			totalSize.addAndGet(-entry.body.length);
+		}
+	}
+
+	Entry get(final Key key)
+	{
+		final Entry entry = entries.get(key);
+		if (entry == null)
+		{
+			return null;
+		}
+
+		final long now = nanoTimeSource.getAsLong();
+		if (entry.expiryNanoTime - now <= 0)
+		{
+			remove(key, entry);
+			return null;
+		}
+
+		entry.lastAccessNanoTime = now;
+		return entry;
+	}
+
+	/**
+	 * Caches a response, unless the cache was invalidated since {@code generationAtMiss}
+	 */
+	void put(final Key key, final byte[] body, final MediaType mediaType, final Map<String, List<Object>> headers, final long generationAtMiss)
+	{
+		if (body.length > maxEntrySize || generation.get() != generationAtMiss)
+		{
+			return;
+		}
+
+		final Entry entry = new Entry(body, mediaType, headers, nanoTimeSource.getAsLong(), timeToLiveNanos);
+		final Entry oldEntry = entries.put(key, entry);
+		totalSize.addAndGet(oldEntry == null ? body.length : body.length - oldEntry.body.length);
+
+		/*
+		 * An invalidation occurring between the generation check above and the put either increments the generation before the check below, or removes the new entry afterwards.
+		 */
+		if (generation.get() != generationAtMiss)
+		{
+			remove(key, entry);
+			return;
+		}
+
+		if (totalSize.get() > maxTotalSize)
+		{
+			evict();
+		}
+	}
+
+	private void evict()
+	{
+		synchronized (evictionLock)
+		{
+			if (totalSize.get() <= maxTotalSize)
+			{
+				// already done by another thread
+				return;
+			}
+
+			// snapshot the access times so that the sort order is stable
+			final List<EvictionCandidate> candidates = new ArrayList<>(entries.size());
+			entries.forEach((key, entry) -> candidates.add(new EvictionCandidate(key, entry, entry.lastAccessNanoTime)));
+			// nanoTime values must be compared by difference (they may overflow)
+			final long now = nanoTimeSource.getAsLong();
+			candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccessNanoTime - now));
+			for (final EvictionCandidate candidate : candidates)
+			{
+				if (totalSize.get() <= evictionTargetSize)
+				{
+					break;
+				}
+
+				remove(candidate.key, candidate.entry);
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached entities for a given resource, whatever the query string, negotiated media type or extra key parts
+	 *
+	 * @param absolutePath
+	 *            absolute path of the resource, i.e. request URI without query parameters (e.g. {@link jakarta.ws.rs.core.UriInfo#getAbsolutePath()})
+	 */
+	public void invalidate(final URI absolutePath)
+	{
+		generation.incrementAndGet();
+		final String path = absolutePath.getRawPath();
+		entries.forEach((key, entry) -> {
+			if (key.path.equals(path))
+			{
+				remove(key, entry);
+			}
+		});
+	}
+
+	/**
+	 * Removes all cached entities
+	 */
+	public void invalidateAll()
+	{
+		generation.incrementAndGet();
+		entries.forEach(this::remove);
+	}
+
+}
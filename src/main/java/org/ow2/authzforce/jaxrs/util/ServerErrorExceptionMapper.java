@@ -17,6 +17,8 @@
  */
 package org.ow2.authzforce.jaxrs.util;
 
+import java.beans.ConstructorProperties;
+
 import jakarta.ws.rs.InternalServerErrorException;
 import jakarta.ws.rs.ServerErrorException;
 import jakarta.ws.rs.core.Response;
@@ -36,9 +38,36 @@ public class ServerErrorExceptionMapper implements ExceptionMapper<ServerErrorEx
 	private final static String INTERNAL_ERR_MSG = "Internal server error:";
 	private final static JaxbErrorMessage ERROR = new JaxbErrorMessage("Internal server error. Retry later or contact the administrator.", null);
 
+	private final ErrorStatistics errorStatistics;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param errorStatistics
+	 *            error statistics where mapped exceptions are recorded; null iff no statistics shall be recorded
+	 */
+	@ConstructorProperties({ "errorStatistics" })
+	public ServerErrorExceptionMapper(final ErrorStatistics errorStatistics)
+	{
+		this.errorStatistics = errorStatistics;
+	}
+
+	/**
+	 * Default constructor, without error statistics
+	 */
+	public ServerErrorExceptionMapper()
+	{
+		this(null);
+	}
+
 	@Override
 	public Response toResponse(final ServerErrorException exception)
 	{
+		if (errorStatistics != null)
+		{
+			errorStatistics.record(exception.getResponse().getStatus(), exception);
+		}
+
 		/*
 		 * Hide any internal server error info to clients
 		 */
@@ -17,6 +17,8 @@
  */
 package org.ow2.authzforce.jaxrs.util;
 
+import java.beans.ConstructorProperties;
+
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
@@ -27,10 +29,36 @@ import jakarta.ws.rs.ext.Provider;
 @Provider
 public class UnsupportedOperationExceptionMapper implements ExceptionMapper<UnsupportedOperationException>
 {
+	private final ErrorStatistics errorStatistics;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param errorStatistics
+	 *            error statistics where mapped exceptions are recorded; null iff no statistics shall be recorded
+	 */
+	@ConstructorProperties({ "errorStatistics" })
+	public UnsupportedOperationExceptionMapper(final ErrorStatistics errorStatistics)
+	{
+		this.errorStatistics = errorStatistics;
+	}
+
+	/**
+	 * Default constructor, without error statistics
+	 */
+	public UnsupportedOperationExceptionMapper()
+	{
+		this(null);
+	}
 
 	@Override
 	public Response toResponse(final UnsupportedOperationException exception)
 	{
+		if (errorStatistics != null)
+		{
+			errorStatistics.record(Response.Status.NOT_IMPLEMENTED.getStatusCode(), exception);
+		}
+
 		final JaxbErrorMessage error = new JaxbErrorMessage(exception.getMessage(), null);
 		return Response.status(Response.Status.NOT_IMPLEMENTED).entity(error).build();
 	}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.core.Response;
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * Tests of error messages returned by {@link BadRequestExceptionMapper}
+ */
+public class BadRequestExceptionMapperTest
+{
+	private static final String INVALID_PARAM_MSG_PREFIX = "Invalid parameters: ";
+
+	private static JaxbErrorMessage toErrorMessage(final int verbosityLevel, final BadRequestException exception)
+	{
+		final Response response = new BadRequestExceptionMapper(verbosityLevel).toResponse(exception);
+		assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+		return (JaxbErrorMessage) response.getEntity();
+	}
+
+	/*
+	 * Messages of the error and its causes, in order
+	 */
+	private static List<String> getMessages(final JaxbErrorMessage errorMessage)
+	{
+		final List<String> messages = new ArrayList<>();
+		for (JaxbErrorMessage next = errorMessage; next != null; next = next.getCause())
+		{
+			messages.add(next.getMessage());
+		}
+
+		return messages;
+	}
+
+	@Test
+	public void cyclicCauseChain()
+	{
+		final RuntimeException a = new RuntimeException("a");
+		final RuntimeException b = new RuntimeException("b");
+		a.initCause(b);
+		b.initCause(a);
+		assertEquals(List.of("a", "b"), getMessages(toErrorMessage(10, new BadRequestException(a))));
+	}
+
+	@Test
+	public void causeChainCapped()
+	{
+		Throwable cause = new RuntimeException("e30");
+		for (int i = 29; i >= 0; i--)
+		{
+			cause = new RuntimeException("e" + i, cause);
+		}
+
+		final List<String> messages = getMessages(toErrorMessage(100, new BadRequestException(cause)));
+		// first cause and 16 of its causes
+		assertEquals(17, messages.size());
+		assertEquals("e0", messages.get(0));
+		assertEquals("e16", messages.get(16));
+
+		// below the cap, verbosity level applies
+		assertEquals(List.of("e0", "e1", "e2"), getMessages(toErrorMessage(3, new BadRequestException(cause))));
+	}
+
+	@Test
+	public void noDetailsAtVerbosityZero()
+	{
+		final JAXBException cause = new JAXBException("secret")
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Throwable getLinkedException()
+			{
+				throw new AssertionError("cause classified at verbosity level 0");
+			}
+		};
+
+		final JaxbErrorMessage errorMessage = toErrorMessage(0, new BadRequestException(cause));
+		assertEquals("", errorMessage.getMessage());
+		assertNull(errorMessage.getCause());
+	}
+
+	@Test
+	public void jaxbExceptionWithoutLinkedException()
+	{
+		final JaxbErrorMessage errorMessage = toErrorMessage(10, new BadRequestException(new JAXBException("invalid element")));
+		assertEquals(List.of(INVALID_PARAM_MSG_PREFIX + "invalid element"), getMessages(errorMessage));
+	}
+
+	@Test
+	public void jaxbExceptionWithLinkedException()
+	{
+		final JAXBException cause = new JAXBException("unmarshalling error", new IllegalArgumentException("invalid value", new RuntimeException("root")));
+		assertEquals(List.of(INVALID_PARAM_MSG_PREFIX + "invalid value", "root"), getMessages(toErrorMessage(10, new BadRequestException(cause))));
+	}
+
+	@Test
+	public void saxExceptionWrappingJaxbException()
+	{
+		final SAXException cause = new SAXException(new JAXBException("unmarshalling error", new IllegalArgumentException("invalid value")));
+		assertEquals(List.of(INVALID_PARAM_MSG_PREFIX + "invalid value"), getMessages(toErrorMessage(10, new BadRequestException(cause))));
+	}
+
+	@Test
+	public void saxException()
+	{
+		assertEquals(List.of(INVALID_PARAM_MSG_PREFIX + "cvc-complex-type"), getMessages(toErrorMessage(10, new BadRequestException(new SAXException("cvc-complex-type")))));
+	}
+
+	@Test
+	public void jaxbExceptionPrefixInStringEntity()
+	{
+		final BadRequestException exception = new BadRequestException(Response.status(Response.Status.BAD_REQUEST).entity("jaxbexception OCCURRED : unexpected element").build());
+		assertEquals(List.of(INVALID_PARAM_MSG_PREFIX + " unexpected element"), getMessages(toErrorMessage(1, exception)));
+
+		final BadRequestException otherException = new BadRequestException(Response.status(Response.Status.BAD_REQUEST).entity("Missing parameter").build());
+		assertEquals(List.of("Missing parameter"), getMessages(toErrorMessage(1, otherException)));
+	}
+
+	@Test
+	public void classCastExceptionHidesCauses()
+	{
+		final ClassCastException cause = new ClassCastException("not a string");
+		cause.initCause(new RuntimeException("hidden"));
+		assertEquals(List.of("Wrong type of input: not a string"), getMessages(toErrorMessage(10, new BadRequestException(cause))));
+	}
+}
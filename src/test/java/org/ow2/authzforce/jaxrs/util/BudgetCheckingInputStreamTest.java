@@ -0,0 +1,270 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Tests of the lexical scan and limits of {@link BudgetCheckingInputStream}
+ */
+public class BudgetCheckingInputStreamTest
+{
+	private static final int UNLIMITED = Integer.MAX_VALUE;
+
+	/*
+	 * Reads the whole input in chunks as large as the parser's buffered reader, i.e. including the bytes after the root object
+	 */
+	private static void readAll(final String json, final JsonDocumentBudget budget) throws IOException
+	{
+		final BudgetCheckingInputStream in = budget.newInputStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		try
+		{
+			final byte[] buffer = new byte[8192];
+			while (in.read(buffer, 0, buffer.length) != -1)
+			{
+				// read until the end
+			}
+		}
+		finally
+		{
+			in.releaseMemory();
+		}
+	}
+
+	private static void assertAccepted(final String json, final int maxNumOfNodes, final int maxTotalKeySize, final int maxTotalStringSize) throws IOException
+	{
+		readAll(json, new JsonDocumentBudget(maxNumOfNodes, maxTotalKeySize, maxTotalStringSize, null));
+	}
+
+	private static void assertRejected(final String json, final int maxNumOfNodes, final int maxTotalKeySize, final int maxTotalStringSize) throws IOException
+	{
+		try
+		{
+			readAll(json, new JsonDocumentBudget(maxNumOfNodes, maxTotalKeySize, maxTotalStringSize, null));
+			fail("Budget exceeded but JSON accepted: " + json);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	private static JSONObject parseWithProvider(final String json, final JsonDocumentBudget budget)
+	{
+		final JsonRiJaxrsProvider provider = new JsonRiJaxrsProvider(null, 1000, 1000, 10, budget, new OrgJsonEngine());
+		final InputStream in = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+		return provider.readFrom(JSONObject.class, JSONObject.class, new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), in);
+	}
+
+	@Test
+	public void escapedQuotes() throws IOException
+	{
+		// value bytes as encoded: a \ " b
+		final String json = "{\"k\":\"a\\\"b\", \"k2\":\"\\\\\"}";
+		assertAccepted(json, 3, 3, 6);
+		assertRejected(json, 3, 3, 5);
+		assertRejected(json, 3, 2, 6);
+		assertRejected(json, 2, 3, 6);
+	}
+
+	@Test
+	public void singleQuotedStrings() throws IOException
+	{
+		// double quote inside single-quoted string does not end it
+		final String json = "{'k':'v\"w', 'k2':\"x'y\"}";
+		assertAccepted(json, 3, 3, 6);
+		assertRejected(json, 3, 3, 5);
+		assertRejected(json, 3, 2, 6);
+	}
+
+	@Test
+	public void unquotedKeysAndValues() throws IOException
+	{
+		final String json = "{k:v, kk : 123, b:true}";
+		// nodes: object + 3 values; keys: k, kk, b; values: v, 123, true
+		assertAccepted(json, 4, 4, 8);
+		assertRejected(json, 3, 4, 8);
+		assertRejected(json, 4, 3, 8);
+		assertRejected(json, 4, 4, 7);
+	}
+
+	@Test
+	public void semicolonSeparator() throws IOException
+	{
+		// key after ';' must be counted as key, not as string value
+		final String json = "{\"a\":1;\"bb\":22;ccc:[3;4]}";
+		assertAccepted(json, 6, 6, 5);
+		assertRejected(json, 6, 5, 5);
+		assertRejected(json, 6, 6, 4);
+	}
+
+	@Test
+	public void quoteInsideUnquotedValue() throws IOException
+	{
+		// the quotes are part of the unquoted values x' and y', else the rest of the document would be skipped as string, then after the root object
+		final String json = "{\"a\":x', \"b\":[{\"c\":y'}], \"d\":[" + "1,".repeat(50000) + "1]}";
+		assertRejected(json, 100, 1000, 1000);
+		assertRejected(json, UNLIMITED, UNLIMITED, 50000);
+
+		try
+		{
+			parseWithProvider(json, new JsonDocumentBudget(100, 1000, 1000, null));
+			fail("Budget exceeded but JSON accepted");
+		}
+		catch (final ClientErrorException e)
+		{
+			assertEquals(Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode(), e.getResponse().getStatus());
+		}
+
+		final JsonParsingMemoryBudget memoryBudget = new JsonParsingMemoryBudget(200);
+		try
+		{
+			parseWithProvider(json, new JsonDocumentBudget(memoryBudget));
+			fail("JSON larger than memory budget capacity accepted");
+		}
+		catch (final ClientErrorException e)
+		{
+			assertEquals(Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode(), e.getResponse().getStatus());
+		}
+
+		assertEquals(memoryBudget.getCapacity(), memoryBudget.getAvailable());
+	}
+
+	@Test
+	public void quoteInsideUnquotedKey() throws IOException
+	{
+		final String json = "{a'b:1}";
+		assertAccepted(json, 2, 3, 1);
+		assertRejected(json, 2, 2, 1);
+		assertRejected(json, 1, 3, 1);
+		assertEquals(1, parseWithProvider(json, new JsonDocumentBudget(2, 3, 1, null)).getInt("a'b"));
+	}
+
+	@Test
+	public void elidedArrayElements() throws IOException
+	{
+		// parsed as [null, null, 1]: object, array and 3 elements
+		final String json = "{\"k\":[,,1]}";
+		assertAccepted(json, 5, 1, 1);
+		assertRejected(json, 4, 1, 1);
+		assertEquals(3, parseWithProvider(json, new JsonDocumentBudget(5, 1, 1, null)).getJSONArray("k").length());
+
+		// trailing comma does not add any element
+		assertAccepted("{\"k\":[1,]}", 3, 1, 1);
+		assertRejected("{\"k\":[1,]}", 2, 1, 1);
+		assertAccepted("{\"k\":[,]}", 3, 1, 1);
+		assertRejected("{\"k\":[,]}", 2, 1, 1);
+	}
+
+	@Test
+	public void multiByteUtf8() throws IOException
+	{
+		// U+00E9 (2 bytes), U+20AC (3 bytes), U+1F600 (4 bytes)
+		final String json = "{\"\u00e9\":\"\u20ac\ud83d\ude00\"}";
+		assertAccepted(json, 2, 2, 7);
+		assertRejected(json, 2, 1, 7);
+		assertRejected(json, 2, 2, 6);
+	}
+
+	@Test
+	public void bytesAfterRootObjectIgnored() throws IOException
+	{
+		final String rootObject = "{\"k\":\"v\"}";
+		final String json = rootObject + "\n\n {\"k2\": \"vvvvvvvvvv\", garbage garbage";
+		assertAccepted(json, 2, 1, 1);
+
+		// trailing bytes do not count against the shared memory budget either
+		final JsonParsingMemoryBudget memoryBudget = new JsonParsingMemoryBudget(rootObject.length());
+		readAll(json, new JsonDocumentBudget(2, 1, 1, memoryBudget));
+		assertEquals(memoryBudget.getCapacity(), memoryBudget.getAvailable());
+	}
+
+	@Test
+	public void bytesAfterRootObjectAcceptedByProvider()
+	{
+		final String rootObject = "{\"k\":\"v\"}";
+		final JsonParsingMemoryBudget memoryBudget = new JsonParsingMemoryBudget(rootObject.length());
+		final JSONObject jsonObject = parseWithProvider(rootObject + " ".repeat(100) + "\n", new JsonDocumentBudget(2, 1, 1, memoryBudget));
+		assertEquals("v", jsonObject.getString("k"));
+		assertEquals(memoryBudget.getCapacity(), memoryBudget.getAvailable());
+	}
+
+	@Test
+	public void documentLargerThanMemoryCapacityIsTooLarge()
+	{
+		final JsonParsingMemoryBudget memoryBudget = new JsonParsingMemoryBudget(16);
+		try
+		{
+			parseWithProvider("{\"k\":\"" + "v".repeat(32) + "\"}", new JsonDocumentBudget(memoryBudget));
+			fail("JSON larger than memory budget capacity accepted");
+		}
+		catch (final ClientErrorException e)
+		{
+			assertEquals(Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode(), e.getResponse().getStatus());
+		}
+
+		assertEquals(memoryBudget.getCapacity(), memoryBudget.getAvailable());
+	}
+
+	@Test(expected = ServiceUnavailableException.class)
+	public void memoryBudgetExhaustedIsUnavailable()
+	{
+		final JsonParsingMemoryBudget memoryBudget = new JsonParsingMemoryBudget(64);
+		// concurrent parsing in progress
+		assertTrue(memoryBudget.tryAcquire(60));
+		parseWithProvider("{\"k\":\"v\"}", new JsonDocumentBudget(memoryBudget));
+	}
+
+	@Test
+	public void memoryBudgetWithoutDocumentLimits()
+	{
+		final JsonParsingMemoryBudget memoryBudget = new JsonParsingMemoryBudget(1024);
+		final JSONObject jsonObject = parseWithProvider("{\"k\":[" + "1,".repeat(300) + "1]}", new JsonDocumentBudget(memoryBudget));
+		assertEquals(301, jsonObject.getJSONArray("k").length());
+		assertEquals(memoryBudget.getCapacity(), memoryBudget.getAvailable());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void undefinedMemoryBudget()
+	{
+		new JsonDocumentBudget(null);
+	}
+
+	@Test
+	public void unlimitedDocumentLimits() throws IOException
+	{
+		assertAccepted("{\"k\":[\"" + "v".repeat(10000) + "\"]}", UNLIMITED, UNLIMITED, UNLIMITED);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ErrorStatistics}
+ */
+public class ErrorStatisticsTest
+{
+	private static JSONObject getStatusStats(final ErrorStatistics stats, final int status)
+	{
+		final JSONArray errors = stats.toJson().getJSONArray("errors");
+		for (int i = 0; i < errors.length(); i++)
+		{
+			final JSONObject statusStats = errors.getJSONObject(i);
+			if (statusStats.getInt("status") == status)
+			{
+				return statusStats;
+			}
+		}
+
+		return null;
+	}
+
+	private static String getSingleRootCause(final Throwable exception)
+	{
+		final ErrorStatistics stats = new ErrorStatistics();
+		stats.record(400, exception);
+		final JSONObject rootCauses = getStatusStats(stats, 400).getJSONObject("rootCauses");
+		assertEquals(1, rootCauses.length());
+		return rootCauses.keys().next();
+	}
+
+	@Test
+	public void statusOutOfErrorRangeIgnored()
+	{
+		final ErrorStatistics stats = new ErrorStatistics();
+		stats.record(200, new RuntimeException());
+		stats.record(399, new RuntimeException());
+		stats.record(600, new RuntimeException());
+		assertTrue(stats.toJson().getJSONArray("errors").isEmpty());
+
+		stats.record(400, new RuntimeException());
+		stats.record(599, new RuntimeException());
+		stats.record(599, new RuntimeException());
+		assertEquals(2, stats.toJson().getJSONArray("errors").length());
+		assertEquals(1, getStatusStats(stats, 400).getLong("count"));
+		assertEquals(2, getStatusStats(stats, 599).getLong("count"));
+	}
+
+	@Test
+	public void rootCause()
+	{
+		assertEquals(IllegalStateException.class.getName(), getSingleRootCause(new RuntimeException(new IOException(new IllegalStateException()))));
+		assertEquals(IOException.class.getName(), getSingleRootCause(new IOException()));
+	}
+
+	@Test
+	public void cyclicCauseChain()
+	{
+		final RuntimeException a = new RuntimeException("a");
+		final IllegalArgumentException b = new IllegalArgumentException("b");
+		a.initCause(b);
+		b.initCause(a);
+		// last cause before the first repeat
+		assertEquals(IllegalArgumentException.class.getName(), getSingleRootCause(a));
+	}
+
+	@Test
+	public void noException()
+	{
+		final ErrorStatistics stats = new ErrorStatistics();
+		stats.record(500, null);
+		stats.record(500, null);
+		assertEquals(2, getStatusStats(stats, 500).getJSONObject("rootCauses").getLong("none"));
+	}
+
+	@Test
+	public void ratePerSecondOverSlidingWindow()
+	{
+		final AtomicLong nanoTime = new AtomicLong(123);
+		final ErrorStatistics stats = new ErrorStatistics(2, nanoTime::get);
+		assertNull(getStatusStats(stats, 400));
+
+		// second 0
+		stats.record(400, null);
+		stats.record(400, null);
+		assertEquals(1.0, getStatusStats(stats, 400).getDouble("ratePerSecond"), 0);
+
+		// second 1
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		stats.record(400, null);
+		assertEquals(1.5, getStatusStats(stats, 400).getDouble("ratePerSecond"), 0);
+
+		// second 2: second 0 out of the window
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(0.5, getStatusStats(stats, 400).getDouble("ratePerSecond"), 0);
+
+		// bucket of second 0 reused for second 2
+		stats.record(400, null);
+		assertEquals(1.0, getStatusStats(stats, 400).getDouble("ratePerSecond"), 0);
+
+		// second 4: all out of the window
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(2));
+		final JSONObject statusStats = getStatusStats(stats, 400);
+		assertEquals(0.0, statusStats.getDouble("ratePerSecond"), 0);
+		assertEquals(4, statusStats.getLong("count"));
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * Load test of the JSON provider, filters and exception mappers on an embedded JAX-RS server (CXF on Jetty), with a mix of valid XACML/JSON requests, invalid requests (400) and requests exceeding
+ * the JSON limits (413). Runs in closed loop then in open loop, and logs throughput and latency percentiles.
+ * <p>
+ * The duration of each run and the open-loop arrival rate default to low values for the regular build; set system properties {@value #DURATION_PROPERTY_NAME} (seconds) and
+ * {@value #REQUESTS_PER_SECOND_PROPERTY_NAME} for actual load tests, e.g. {@code mvn test -Dtest=JaxrsLoadTest -Dloadtest.durationSeconds=60 -Dloadtest.requestsPerSecond=2000}.
+ * <p>
+ * For CI, thresholds may be set with system properties {@value #MAX_P99_MILLIS_PROPERTY_NAME} (maximum p99 latency in milliseconds) and {@value #MIN_THROUGHPUT_PROPERTY_NAME} (minimum throughput in
+ * requests per second), checked on each run when set. The results of all runs and the error statistics are written as JSON to {@code target/loadtest-results.json} (or the file set with
+ * {@value #RESULTS_FILE_PROPERTY_NAME}).
+ */
+public class JaxrsLoadTest
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(JaxrsLoadTest.class);
+
+	static final String DURATION_PROPERTY_NAME = "loadtest.durationSeconds";
+	static final String REQUESTS_PER_SECOND_PROPERTY_NAME = "loadtest.requestsPerSecond";
+	static final String MAX_P99_MILLIS_PROPERTY_NAME = "loadtest.maxP99Millis";
+	static final String MIN_THROUGHPUT_PROPERTY_NAME = "loadtest.minThroughput";
+	static final String RESULTS_FILE_PROPERTY_NAME = "loadtest.resultsFile";
+	private static final Duration DURATION = Duration.ofSeconds(Long.getLong(DURATION_PROPERTY_NAME, 2));
+	private static final int OPEN_LOOP_REQUESTS_PER_SECOND = Integer.getInteger(REQUESTS_PER_SECOND_PROPERTY_NAME, 100);
+	private static final int NUM_OF_CLIENTS = 8;
+	private static final Double MAX_P99_MILLIS = getDoubleProperty(MAX_P99_MILLIS_PROPERTY_NAME);
+	private static final Double MIN_THROUGHPUT = getDoubleProperty(MIN_THROUGHPUT_PROPERTY_NAME);
+	private static final File RESULTS_FILE = new File(System.getProperty(RESULTS_FILE_PROPERTY_NAME, "target/loadtest-results.json"));
+
+	private static final String XACML_JSON_MEDIA_TYPE = "application/xacml+json";
+
+	private static final String VALID_REQUEST = new JSONObject().put("Request",
+	        new JSONObject().put("Category", new JSONArray()
+	                .put(new JSONObject().put("CategoryId", "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject").put("Attribute",
+	                        new JSONArray().put(new JSONObject().put("AttributeId", "urn:oasis:names:tc:xacml:1.0:subject:subject-id").put("Value", "john"))))
+	                .put(new JSONObject().put("CategoryId", "urn:oasis:names:tc:xacml:3.0:attribute-category:action").put("Attribute",
+	                        new JSONArray().put(new JSONObject().put("AttributeId", "urn:oasis:names:tc:xacml:1.0:action:action-id").put("Value", "read"))))))
+	        .toString();
+	private static final String INVALID_REQUEST = "{\"Request\":{\"Category\":[{\"CategoryId\":";
+	private static final String TOO_LARGE_REQUEST = "{\"Request\":{\"Category\":[" + "{\"CategoryId\":\"c\"},".repeat(200) + "{}]}}";
+
+	/**
+	 * Mock PDP resource
+	 */
+	@Path("pdp")
+	public static final class PdpResource
+	{
+		private static final JSONObject PERMIT_RESPONSE = new JSONObject().put("Response", new JSONArray().put(new JSONObject().put("Decision", "Permit")));
+
+		/**
+		 * Evaluates a XACML/JSON request
+		 *
+		 * @param request
+		 *            request
+		 * @return Permit response
+		 */
+		@POST
+		@Consumes(XACML_JSON_MEDIA_TYPE)
+		@Produces(XACML_JSON_MEDIA_TYPE)
+		public JSONObject evaluate(final JSONObject request)
+		{
+			return request.has("Request") ? PERMIT_RESPONSE : new JSONObject().put("Response", new JSONArray().put(new JSONObject().put("Decision", "Indeterminate")));
+		}
+	}
+
+	private static final ErrorStatistics ERROR_STATISTICS = new ErrorStatistics();
+	private static final JSONArray RESULTS = new JSONArray();
+
+	private static Server server;
+	private static URI pdpUri;
+	private static HttpClient httpClient;
+
+	private static Double getDoubleProperty(final String name)
+	{
+		final String value = System.getProperty(name);
+		return value == null || value.isEmpty() ? null : Double.valueOf(value);
+	}
+
+	/**
+	 * Starts the embedded server and warms it up
+	 *
+	 * @throws IOException
+	 *             no free port for the server
+	 * @throws InterruptedException
+	 *             interrupted during warm-up
+	 */
+	@BeforeClass
+	public static void startServer() throws IOException, InterruptedException
+	{
+		final int port;
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			port = socket.getLocalPort();
+		}
+
+		final JAXRSServerFactoryBean serverFactory = new JAXRSServerFactoryBean();
+		serverFactory.setAddress("http://localhost:" + port + "/");
+		serverFactory.setResourceClasses(PdpResource.class);
+		serverFactory.setResourceProvider(PdpResource.class, new SingletonResourceProvider(new PdpResource()));
+		final JsonDocumentBudget documentBudget = new JsonDocumentBudget(1000, 100_000, 100_000, new JsonParsingMemoryBudget(64 * 1024 * 1024));
+		serverFactory.setProviders(List.of(new JsonRiJaxrsProvider(null, 1000, 100, 10, documentBudget, new OrgJsonEngine()),
+		        new AcceptMediaTypeCheckingRequestFilter(List.of(XACML_JSON_MEDIA_TYPE, "application/xml")), new BadRequestExceptionMapper(0, ERROR_STATISTICS),
+		        new ClientErrorExceptionMapper(ERROR_STATISTICS), new ServerErrorExceptionMapper(ERROR_STATISTICS), new UnsupportedOperationExceptionMapper(ERROR_STATISTICS),
+		        new DefaultExceptionMapper(ERROR_STATISTICS)));
+		server = serverFactory.create();
+		pdpUri = URI.create("http://localhost:" + port + "/pdp");
+		httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(10)).build();
+
+		final LoadDriver.Counter<Integer> warmUpStatusCounter = new LoadDriver.Counter<>();
+		new LoadDriver(requestIndex -> sendMixedRequest(requestIndex, warmUpStatusCounter)).runClosedLoop("warm-up", NUM_OF_CLIENTS, DURATION);
+	}
+
+	/**
+	 * Stops the embedded server and writes the results
+	 *
+	 * @throws IOException
+	 *             error writing the results file
+	 */
+	@AfterClass
+	public static void stopServer() throws IOException
+	{
+		if (server != null)
+		{
+			server.destroy();
+		}
+
+		final JSONObject errorStatistics = ERROR_STATISTICS.toJson();
+		LOGGER.info("Error statistics: {}", errorStatistics);
+		Files.createDirectories(RESULTS_FILE.getAbsoluteFile().getParentFile().toPath());
+		Files.writeString(RESULTS_FILE.toPath(), new JSONObject().put("results", RESULTS).put("errorStatistics", errorStatistics).toString(2), StandardCharsets.UTF_8);
+	}
+
+	private static int post(final String body) throws IOException, InterruptedException
+	{
+		final HttpRequest request = HttpRequest.newBuilder(pdpUri).timeout(Duration.ofSeconds(30)).header("Content-Type", XACML_JSON_MEDIA_TYPE)
+		        .header("Accept", XACML_JSON_MEDIA_TYPE + ", application/xml;q=0.9").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+		return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+
+	/*
+	 * Request mix: 8 valid requests out of 10, 1 invalid, 1 too large
+	 */
+	private static boolean sendMixedRequest(final long requestIndex, final LoadDriver.Counter<Integer> statusCounter) throws IOException, InterruptedException
+	{
+		final int kind = (int) (requestIndex % 10);
+		final String body;
+		final int expectedStatus;
+		switch (kind)
+		{
+			case 8 -> {
+				body = INVALID_REQUEST;
+				expectedStatus = 400;
+			}
+			case 9 -> {
+				body = TOO_LARGE_REQUEST;
+				expectedStatus = 413;
+			}
+			default -> {
+				body = VALID_REQUEST;
+				expectedStatus = 200;
+			}
+		}
+
+		final int status = post(body);
+		statusCounter.increment(status);
+		return status == expectedStatus;
+	}
+
+	private static void assertResult(final LoadDriver.Result result, final LoadDriver.Counter<Integer> statusCounter)
+	{
+		LOGGER.info("{}, status codes: {}", result, statusCounter);
+		RESULTS.put(result.toJson().put("statusCodes", new JSONObject(statusCounter.toMap())));
+		assertTrue(result.name() + ": no request completed", result.numOfRequests() > 0);
+		assertEquals(result.name() + ": requests with unexpected status, status codes: " + statusCounter, 0, result.numOfFailures());
+		if (MAX_P99_MILLIS != null)
+		{
+			final double p99Millis = LoadDriver.Result.toMillis(result.p99());
+			assertTrue(result.name() + ": p99 latency (" + p99Millis + " ms) above " + MAX_P99_MILLIS_PROPERTY_NAME + " (" + MAX_P99_MILLIS + " ms)", p99Millis <= MAX_P99_MILLIS);
+		}
+
+		if (MIN_THROUGHPUT != null)
+		{
+			assertTrue(result.name() + ": throughput (" + result.throughput() + " req/s) below " + MIN_THROUGHPUT_PROPERTY_NAME + " (" + MIN_THROUGHPUT + " req/s)",
+			        result.throughput() >= MIN_THROUGHPUT);
+		}
+	}
+
+	@Test
+	public void mixedRequestsInClosedLoop() throws Exception
+	{
+		final LoadDriver.Counter<Integer> statusCounter = new LoadDriver.Counter<>();
+		final LoadDriver driver = new LoadDriver(requestIndex -> sendMixedRequest(requestIndex, statusCounter));
+		assertResult(driver.runClosedLoop("closed loop (" + NUM_OF_CLIENTS + " clients)", NUM_OF_CLIENTS, DURATION), statusCounter);
+	}
+
+	@Test
+	public void mixedRequestsInOpenLoop() throws Exception
+	{
+		final LoadDriver.Counter<Integer> statusCounter = new LoadDriver.Counter<>();
+		final LoadDriver driver = new LoadDriver(requestIndex -> sendMixedRequest(requestIndex, statusCounter));
+		assertResult(driver.runOpenLoop("open loop (" + OPEN_LOOP_REQUESTS_PER_SECOND + " req/s)", OPEN_LOOP_REQUESTS_PER_SECOND, NUM_OF_CLIENTS * 4, DURATION), statusCounter);
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+
+/**
+ * Conformance of a {@link JsonEngine} implementation, in {@link JsonRiJaxrsProvider} configurations, to the reference behavior of {@link OrgJsonEngine} alone: same accepted inputs (and parsed
+ * objects), same rejected inputs with the same status code (400 for invalid JSON, 413 for limits exceeded), whether a {@link JsonKeyDictionary} is used and/or the input is wrapped in a
+ * {@link BudgetCheckingInputStream} (with budgets large enough not to be exceeded by these inputs).
+ * <p>
+ * To test a new {@link JsonEngine}, extend this class and implement {@link #newEngine(JsonKeyDictionary)}.
+ */
+@RunWith(Parameterized.class)
+public abstract class JsonEngineConformanceTest
+{
+	private static final int OK = 200;
+	private static final int BAD_REQUEST = 400;
+	private static final int TOO_LARGE = 413;
+
+	private static final int MAX_STRING_SIZE = 16;
+	private static final int MAX_NUM_OF_CHILDREN = 4;
+	private static final int MAX_DEPTH = 3;
+
+	private static final String LONG_STRING = "s".repeat(MAX_STRING_SIZE + 1);
+
+	private static final JsonKeyDictionary KEY_DICTIONARY = new JsonKeyDictionary(List.of(), 16);
+
+	/**
+	 * Test cases: name, JSON input, expected status with limits, expected status without limits
+	 *
+	 * @return test cases
+	 */
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> data()
+	{
+		return Arrays.asList(new Object[][] {
+		        // valid
+		        { "simple", "{\"a\":\"b\"}", OK, OK },
+		        { "nested", "{\"a\":{\"b\":[1,true,null]}}", OK, OK },
+		        { "escapes", "{\"a\\\"\":\"\\u00e9\\n\\\"x\\\"\"}", OK, OK },
+		        { "escaped slash and backslash", "{\"a\":\"\\/\\\\\"}", OK, OK },
+		        { "single-quoted strings", "{'a':'b\"c', 'd':\"e'f\"}", OK, OK },
+		        { "unquoted keys and values", "{a:b, c : 1.5e3}", OK, OK },
+		        { "semicolon separator", "{\"a\":1;\"b\":[2,3]}", OK, OK },
+		        { "quotes inside unquoted values", "{\"a\":x', \"b\":[{\"c\":y'}], \"d\":[1,2]}", OK, OK },
+		        { "quote inside unquoted key", "{a'b:1}", OK, OK },
+		        { "elided array elements", "{\"a\":[,,1]}", OK, OK },
+		        { "empty object", "{}", OK, OK },
+		        { "multi-byte UTF-8", "{\"\u00e9\":\"\u20ac\ud83d\ude00\"}", OK, OK },
+		        { "whitespace after root object", "{\"a\":\"b\"}\n\n  \t", OK, OK },
+		        { "repeated keys in different objects", "{\"a\":{\"a\":\"a\"},\"b\":[{\"a\":\"a\"}]}", OK, OK },
+		        // invalid
+		        { "empty input", "", BAD_REQUEST, BAD_REQUEST },
+		        { "semicolon separator in array", "{\"a\":[2;3]}", BAD_REQUEST, BAD_REQUEST },
+		        { "root array", "[1]", BAD_REQUEST, BAD_REQUEST },
+		        { "unterminated string", "{\"a\":\"b", BAD_REQUEST, BAD_REQUEST },
+		        { "newline in string", "{\"a\":\"b\nc\"}", BAD_REQUEST, BAD_REQUEST },
+		        { "illegal escape", "{\"a\":\"\\x\"}", BAD_REQUEST, BAD_REQUEST },
+		        { "illegal unicode escape", "{\"a\":\"\\u00zz\"}", BAD_REQUEST, BAD_REQUEST },
+		        { "duplicate key", "{\"a\":1,\"a\":2}", BAD_REQUEST, BAD_REQUEST },
+		        { "missing colon", "{\"a\" 1}", BAD_REQUEST, BAD_REQUEST },
+		        { "unclosed object", "{\"a\":1", BAD_REQUEST, BAD_REQUEST },
+		        // limits exceeded
+		        { "string value too long", "{\"a\":\"" + LONG_STRING + "\"}", TOO_LARGE, OK },
+		        { "key too long", "{\"" + LONG_STRING + "\":1}", TOO_LARGE, OK },
+		        { "too many keys", "{\"a\":1,\"b\":2,\"c\":3,\"d\":4,\"e\":5}", TOO_LARGE, OK },
+		        { "too many array items", "{\"a\":[1,2,3,4,5]}", TOO_LARGE, OK },
+		        { "too deep", "{\"a\":{\"b\":{\"c\":{\"d\":{\"e\":1}}}}}", TOO_LARGE, OK } });
+	}
+
+	private final String json;
+	private final int expectedStatusWithLimits;
+	private final int expectedStatusWithoutLimits;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name
+	 *            test case name
+	 * @param json
+	 *            JSON input
+	 * @param expectedStatusWithLimits
+	 *            expected status when limits are checked
+	 * @param expectedStatusWithoutLimits
+	 *            expected status when limits are not checked
+	 */
+	protected JsonEngineConformanceTest(final String name, final String json, final int expectedStatusWithLimits, final int expectedStatusWithoutLimits)
+	{
+		this.json = json;
+		this.expectedStatusWithLimits = expectedStatusWithLimits;
+		this.expectedStatusWithoutLimits = expectedStatusWithoutLimits;
+	}
+
+	/**
+	 * Creates the engine under test
+	 *
+	 * @param keyDictionary
+	 *            table of canonical strings for member names; null iff no deduplication shall occur
+	 * @return engine under test
+	 */
+	protected abstract JsonEngine newEngine(JsonKeyDictionary keyDictionary);
+
+	private static JsonDocumentBudget newLargeBudget()
+	{
+		return new JsonDocumentBudget(1000, 1000, 1000, new JsonParsingMemoryBudget(1 << 20));
+	}
+
+	private static final class Result
+	{
+		private final int status;
+		private final JSONObject jsonObject;
+
+		private Result(final int status, final JSONObject jsonObject)
+		{
+			this.status = status;
+			this.jsonObject = jsonObject;
+		}
+	}
+
+	private Result parse(final JsonRiJaxrsProvider provider)
+	{
+		try
+		{
+			final JSONObject jsonObject = provider.readFrom(JSONObject.class, JSONObject.class, new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(),
+			        new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+			return new Result(OK, jsonObject);
+		}
+		catch (final WebApplicationException e)
+		{
+			return new Result(e.getResponse().getStatus(), null);
+		}
+	}
+
+	private void assertConforms(final String configuration, final Result reference, final Result actual)
+	{
+		assertEquals(configuration + ": status", reference.status, actual.status);
+		if (reference.status == OK)
+		{
+			assertTrue(configuration + ": parsed object differs from reference: " + actual.jsonObject + " vs. " + reference.jsonObject, reference.jsonObject.similar(actual.jsonObject));
+		}
+	}
+
+	@Test
+	public void withLimits()
+	{
+		final Result reference = parse(new JsonRiJaxrsProvider(null, MAX_STRING_SIZE, MAX_NUM_OF_CHILDREN, MAX_DEPTH, new OrgJsonEngine()));
+		assertEquals("Reference: status", expectedStatusWithLimits, reference.status);
+
+		assertConforms("Engine", reference, parse(new JsonRiJaxrsProvider(null, MAX_STRING_SIZE, MAX_NUM_OF_CHILDREN, MAX_DEPTH, newEngine(null))));
+		assertConforms("Engine with JsonKeyDictionary", reference, parse(new JsonRiJaxrsProvider(null, MAX_STRING_SIZE, MAX_NUM_OF_CHILDREN, MAX_DEPTH, newEngine(KEY_DICTIONARY))));
+		assertConforms("Engine with BudgetCheckingInputStream", reference,
+		        parse(new JsonRiJaxrsProvider(null, MAX_STRING_SIZE, MAX_NUM_OF_CHILDREN, MAX_DEPTH, newLargeBudget(), newEngine(null))));
+		assertConforms("Engine with JsonKeyDictionary and BudgetCheckingInputStream", reference,
+		        parse(new JsonRiJaxrsProvider(null, MAX_STRING_SIZE, MAX_NUM_OF_CHILDREN, MAX_DEPTH, newLargeBudget(), newEngine(KEY_DICTIONARY))));
+	}
+
+	@Test
+	public void withoutLimits()
+	{
+		final Result reference = parse(new JsonRiJaxrsProvider(null, new OrgJsonEngine()));
+		assertEquals("Reference: status", expectedStatusWithoutLimits, reference.status);
+
+		assertConforms("Engine", reference, parse(new JsonRiJaxrsProvider(null, newEngine(null))));
+		assertConforms("Engine with JsonKeyDictionary", reference, parse(new JsonRiJaxrsProvider(null, newEngine(KEY_DICTIONARY))));
+	}
+}
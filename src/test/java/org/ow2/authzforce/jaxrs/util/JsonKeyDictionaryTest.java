@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Tests of {@link JsonKeyDictionary} used by {@link OrgJsonEngine}, with and without limits
+ */
+public class JsonKeyDictionaryTest
+{
+	/*
+	 * Recursive schema: a Category may contain Categories
+	 */
+	private static final String SCHEMA = "{\"type\":\"object\",\"properties\":{\"Request\":{\"type\":\"object\",\"properties\":{\"Category\":{\"type\":\"array\",\"items\":{\"$ref\":\"#/definitions/Category\"}}}}},"
+	        + "\"definitions\":{\"Category\":{\"type\":\"object\",\"properties\":{\"Attribute\":{\"type\":\"string\"},\"SubCategory\":{\"$ref\":\"#/definitions/Category\"}}}}}";
+
+	private static final String DOCUMENT = "{\"Request\":{\"Category\":[{\"Attribute\":\"Category\",\"SubCategory\":{\"Attribute\":\"x\"}},{\"unknown\":\"Request\"}]}}";
+
+	private static JsonKeyDictionary newDictionary(final int maxNumOfUnknownKeys)
+	{
+		final Schema schema = SchemaLoader.load(new JSONObject(SCHEMA));
+		return new JsonKeyDictionary(List.of(schema), maxNumOfUnknownKeys);
+	}
+
+	private static ByteArrayInputStream newInput(final String json)
+	{
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String getKey(final JSONObject jsonObject, final String name)
+	{
+		for (final String key : jsonObject.keySet())
+		{
+			if (key.equals(name))
+			{
+				return key;
+			}
+		}
+
+		throw new AssertionError("Missing key: " + name);
+	}
+
+	private static void assertSeededKeysCanonical(final JsonKeyDictionary dictionary, final JSONObject jsonObject)
+	{
+		final String requestKey = dictionary.getSeededKey("Request");
+		assertNotNull(requestKey);
+		assertSame(requestKey, getKey(jsonObject, "Request"));
+
+		final JSONObject request = jsonObject.getJSONObject("Request");
+		assertSame(dictionary.getSeededKey("Category"), getKey(request, "Category"));
+
+		final JSONObject category = request.getJSONArray("Category").getJSONObject(0);
+		assertSame(dictionary.getSeededKey("Attribute"), getKey(category, "Attribute"));
+		// recursive part of the schema
+		assertSame(dictionary.getSeededKey("SubCategory"), getKey(category, "SubCategory"));
+		assertSame(dictionary.getSeededKey("Attribute"), getKey(category.getJSONObject("SubCategory"), "Attribute"));
+	}
+
+	@Test
+	public void recursiveSchemaPropertyNames()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(0);
+		for (final String propertyName : List.of("Request", "Category", "Attribute", "SubCategory"))
+		{
+			assertNotNull(propertyName, dictionary.getSeededKey(propertyName));
+		}
+
+		// definitions are not property names
+		assertNull(dictionary.getSeededKey("definitions"));
+	}
+
+	@Test
+	public void seededKeysWithoutLimits()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(16);
+		assertSeededKeysCanonical(dictionary, new OrgJsonEngine(dictionary).parse(newInput(DOCUMENT)));
+	}
+
+	@Test
+	public void seededKeysWithLimits()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(16);
+		assertSeededKeysCanonical(dictionary, new OrgJsonEngine(dictionary).parse(newInput(DOCUMENT), 100, 10, 10));
+	}
+
+	@Test
+	public void stringValuesNotCached()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(16);
+		final JSONObject jsonObject = new OrgJsonEngine(dictionary).parse(newInput("{\"unknown\":\"value\", \"Attribute\":\"Category\"}"));
+		// only the unknown key
+		assertEquals(1, dictionary.getNumOfUnknownKeys());
+		assertNotSame(jsonObject.getString("unknown"), dictionary.getCanonical(new StringBuilder("value")));
+		// string value equal to a seeded key is replaced with it
+		assertSame(dictionary.getSeededKey("Category"), jsonObject.getString("Attribute"));
+	}
+
+	@Test
+	public void unknownKeysCached()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(16);
+		final OrgJsonEngine engine = new OrgJsonEngine(dictionary);
+		final JSONObject jsonObject1 = engine.parse(newInput("{\"unknown\":1}"));
+		final JSONObject jsonObject2 = engine.parse(newInput("{\"unknown\":2}"), 100, 10, 10);
+		assertSame(getKey(jsonObject1, "unknown"), getKey(jsonObject2, "unknown"));
+	}
+
+	@Test
+	public void unknownKeysBounded()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(5);
+		final OrgJsonEngine engine = new OrgJsonEngine(dictionary);
+		for (int i = 0; i < 1000; i++)
+		{
+			engine.parse(newInput("{\"key" + i + "\":1, \"Request\":{}}"));
+			engine.parse(newInput("{\"otherKey" + i + "\":1}"), 100, 10, 10);
+			assertTrue(dictionary.getNumOfUnknownKeys() <= 5);
+		}
+
+		// rounded down to a power of two
+		assertTrue(dictionary.getNumOfUnknownKeys() <= 4);
+	}
+
+	@Test
+	public void unknownKeysCacheDisabled()
+	{
+		final JsonKeyDictionary dictionary = newDictionary(0);
+		final JSONObject jsonObject = new OrgJsonEngine(dictionary).parse(newInput(DOCUMENT));
+		assertEquals(0, dictionary.getNumOfUnknownKeys());
+		assertSeededKeysCanonical(dictionary, jsonObject);
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONObject;
+
+/**
+ * Simple load generator for load tests: sends requests in a closed loop (fixed number of clients, each sending its next request as soon as it gets the response) or an open loop (fixed arrival rate,
+ * whatever the response times), and records latencies and response status codes.
+ * <p>
+ * In open loop, the latency is measured from the scheduled start time of the request, not the actual one, so that the delay of requests waiting for a free client is included (no coordinated
+ * omission).
+ */
+final class LoadDriver
+{
+	/**
+	 * Request sender
+	 */
+	@FunctionalInterface
+	interface RequestSender
+	{
+		/**
+		 * Sends a request and waits for the response
+		 *
+		 * @param requestIndex
+		 *            index of the request in the whole run, e.g. to select the kind of request in a mix
+		 * @return true iff the response is as expected
+		 * @throws Exception
+		 *             error sending the request or getting the response
+		 */
+		boolean send(long requestIndex) throws Exception;
+	}
+
+	/**
+	 * Load test results
+	 *
+	 * @param name
+	 *            name of the run
+	 * @param numOfRequests
+	 *            number of completed requests
+	 * @param numOfFailures
+	 *            number of requests with unexpected response or error
+	 * @param throughput
+	 *            completed requests per second
+	 * @param p50
+	 *            median latency
+	 * @param p99
+	 *            99th percentile of latencies
+	 * @param p999
+	 *            99.9th percentile of latencies
+	 * @param max
+	 *            maximum latency
+	 */
+	record Result(String name, long numOfRequests, long numOfFailures, double throughput, Duration p50, Duration p99, Duration p999, Duration max)
+	{
+		@Override
+		public String toString()
+		{
+			return String.format("%s: %d requests (%d failures), %.1f req/s, latency p50=%.3f ms, p99=%.3f ms, p999=%.3f ms, max=%.3f ms", name, numOfRequests, numOfFailures, throughput,
+			        toMillis(p50), toMillis(p99), toMillis(p999), toMillis(max));
+		}
+
+		/**
+		 * Gets the result in machine-readable form (latencies in milliseconds)
+		 *
+		 * @return result as JSON
+		 */
+		JSONObject toJson()
+		{
+			return new JSONObject().put("name", name).put("numOfRequests", numOfRequests).put("numOfFailures", numOfFailures).put("throughput", throughput).put("p50Millis", toMillis(p50))
+			        .put("p99Millis", toMillis(p99)).put("p999Millis", toMillis(p999)).put("maxMillis", toMillis(max));
+		}
+
+		static double toMillis(final Duration duration)
+		{
+			return duration.toNanos() / 1_000_000.0;
+		}
+	}
+
+	/**
+	 * Latencies of one client thread (not thread-safe)
+	 */
+	private static final class LatencyRecorder
+	{
+		private long[] latencies = new long[1024];
+		private int size = 0;
+
+		private void record(final long latencyNanos)
+		{
+			if (size == latencies.length)
+			{
+				latencies = Arrays.copyOf(latencies, size * 2);
+			}
+
+			latencies[size++] = latencyNanos;
+		}
+	}
+
+	private final RequestSender sender;
+	private final Map<Thread, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+	private final LongAdder numOfFailures = new LongAdder();
+	private final ThreadLocal<LatencyRecorder> threadRecorder = ThreadLocal.withInitial(() -> {
+		final LatencyRecorder recorder = new LatencyRecorder();
+		recorders.put(Thread.currentThread(), recorder);
+		return recorder;
+	});
+
+	LoadDriver(final RequestSender sender)
+	{
+		this.sender = sender;
+	}
+
+	private void sendAndRecord(final long requestIndex, final long startNanoTime)
+	{
+		boolean ok;
+		try
+		{
+			ok = sender.send(requestIndex);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			ok = false;
+		}
+		catch (final Exception e)
+		{
+			ok = false;
+		}
+
+		threadRecorder.get().record(System.nanoTime() - startNanoTime);
+		if (!ok)
+		{
+			numOfFailures.increment();
+		}
+	}
+
+	private Result newResult(final String name, final long durationNanos)
+	{
+		final long[] allLatencies = recorders.values().stream().flatMapToLong(recorder -> Arrays.stream(recorder.latencies, 0, recorder.size)).sorted().toArray();
+		recorders.clear();
+		final long numOfRequests = allLatencies.length;
+		return new Result(name, numOfRequests, numOfFailures.sumThenReset(), numOfRequests * 1e9 / durationNanos, percentile(allLatencies, 0.5), percentile(allLatencies, 0.99),
+		        percentile(allLatencies, 0.999), percentile(allLatencies, 1));
+	}
+
+	private static Duration percentile(final long[] sortedValues, final double p)
+	{
+		if (sortedValues.length == 0)
+		{
+			return Duration.ZERO;
+		}
+
+		// nearest-rank method
+		final int rank = (int) Math.ceil(p * sortedValues.length);
+		return Duration.ofNanos(sortedValues[Math.max(rank, 1) - 1]);
+	}
+
+	private static void shutdown(final ExecutorService executor) throws InterruptedException
+	{
+		executor.shutdown();
+		if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs a closed-loop load test
+	 *
+	 * @param name
+	 *            name of the run
+	 * @param numOfClients
+	 *            number of concurrent clients (threads)
+	 * @param duration
+	 *            duration of the run
+	 * @return results
+	 * @throws InterruptedException
+	 *             interrupted while waiting for clients to complete
+	 */
+	Result runClosedLoop(final String name, final int numOfClients, final Duration duration) throws InterruptedException
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(numOfClients);
+		final AtomicLong requestCounter = new AtomicLong(0);
+		final long startNanoTime = System.nanoTime();
+		final long endNanoTime = startNanoTime + duration.toNanos();
+		for (int i = 0; i < numOfClients; i++)
+		{
+			executor.execute(() -> {
+				long requestStartNanoTime;
+				while ((requestStartNanoTime = System.nanoTime()) - endNanoTime < 0 && !Thread.currentThread().isInterrupted())
+				{
+					sendAndRecord(requestCounter.getAndIncrement(), requestStartNanoTime);
+				}
+			});
+		}
+
+		shutdown(executor);
+		return newResult(name, System.nanoTime() - startNanoTime);
+	}
+
+	/**
+	 * Runs an open-loop load test
+	 *
+	 * @param name
+	 *            name of the run
+	 * @param requestsPerSecond
+	 *            arrival rate of requests
+	 * @param maxNumOfClients
+	 *            maximum number of concurrent clients (threads); requests arriving when all clients are busy wait for a free client
+	 * @param duration
+	 *            duration of the run
+	 * @return results
+	 * @throws InterruptedException
+	 *             interrupted while waiting for clients to complete
+	 */
+	Result runOpenLoop(final String name, final int requestsPerSecond, final int maxNumOfClients, final Duration duration) throws InterruptedException
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(maxNumOfClients);
+		final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+		final long numOfRequests = duration.toNanos() / intervalNanos;
+		final long startNanoTime = System.nanoTime();
+		for (long i = 0; i < numOfRequests && !Thread.currentThread().isInterrupted(); i++)
+		{
+			final long requestIndex = i;
+			final long scheduledNanoTime = startNanoTime + i * intervalNanos;
+			long delayNanos;
+			while ((delayNanos = scheduledNanoTime - System.nanoTime()) > 0)
+			{
+				LockSupport.parkNanos(delayNanos);
+			}
+
+			executor.execute(() -> sendAndRecord(requestIndex, scheduledNanoTime));
+		}
+
+		shutdown(executor);
+		return newResult(name, System.nanoTime() - startNanoTime);
+	}
+
+	/**
+	 * Counts of occurrences by key, e.g. response status codes. Thread-safe.
+	 */
+	static final class Counter<K extends Comparable<K>>
+	{
+		private final Map<K, LongAdder> counts = new ConcurrentHashMap<>();
+
+		void increment(final K key)
+		{
+			counts.computeIfAbsent(key, k -> new LongAdder()).increment();
+		}
+
+		/**
+		 * Gets a snapshot of the counts
+		 *
+		 * @return counts sorted by key
+		 */
+		Map<K, Long> toMap()
+		{
+			final Map<K, Long> sortedCounts = new TreeMap<>();
+			counts.forEach((key, count) -> sortedCounts.put(key, count.sum()));
+			return sortedCounts;
+		}
+
+		@Override
+		public String toString()
+		{
+			return toMap().toString();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+/**
+ * {@link JsonEngineConformanceTest} of {@link OrgJsonEngine}
+ */
+public class OrgJsonEngineConformanceTest extends JsonEngineConformanceTest
+{
+	/**
+	 * Constructor
+	 *
+	 * @param name
+	 *            test case name
+	 * @param json
+	 *            JSON input
+	 * @param expectedStatusWithLimits
+	 *            expected status when limits are checked
+	 * @param expectedStatusWithoutLimits
+	 *            expected status when limits are not checked
+	 */
+	public OrgJsonEngineConformanceTest(final String name, final String json, final int expectedStatusWithLimits, final int expectedStatusWithoutLimits)
+	{
+		super(name, json, expectedStatusWithLimits, expectedStatusWithoutLimits);
+	}
+
+	@Override
+	protected JsonEngine newEngine(final JsonKeyDictionary keyDictionary)
+	{
+		return new OrgJsonEngine(keyDictionary);
+	}
+}
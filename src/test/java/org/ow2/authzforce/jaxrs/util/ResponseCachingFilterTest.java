@@ -0,0 +1,315 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.PreMatching;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.NewCookie;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+
+/**
+ * Tests of {@link ResponseCachingFilter} on an embedded JAX-RS server
+ */
+public class ResponseCachingFilterTest
+{
+	private static final String TENANT_HEADER = "X-Tenant";
+	private static final String USER_HEADER = "X-User";
+
+	/**
+	 * Authentication filter setting the user principal from the (trusted) user header, if any
+	 */
+	@PreMatching
+	@Priority(Priorities.AUTHENTICATION)
+	public static final class UserHeaderAuthenticationFilter implements ContainerRequestFilter
+	{
+		@Override
+		public void filter(final ContainerRequestContext requestContext)
+		{
+			final String userName = requestContext.getHeaderString(USER_HEADER);
+			if (userName == null)
+			{
+				return;
+			}
+
+			final Principal principal = () -> userName;
+			requestContext.setSecurityContext(new SecurityContext()
+			{
+				@Override
+				public Principal getUserPrincipal()
+				{
+					return principal;
+				}
+
+				@Override
+				public boolean isUserInRole(final String role)
+				{
+					return false;
+				}
+
+				@Override
+				public boolean isSecure()
+				{
+					return false;
+				}
+
+				@Override
+				public String getAuthenticationScheme()
+				{
+					return "X-User";
+				}
+			});
+		}
+	}
+
+	/**
+	 * Resource returning the number of calls, to tell cached responses from new ones
+	 */
+	@Path("/")
+	public static final class CountingResource
+	{
+		private final AtomicInteger numOfCalls = new AtomicInteger(0);
+
+		private Response.ResponseBuilder newResponse(final String tenant)
+		{
+			return Response.ok(new JSONObject().put("call", numOfCalls.incrementAndGet()).put("tenant", String.valueOf(tenant)));
+		}
+
+		/**
+		 * @param tenant
+		 *            tenant
+		 * @return response with custom headers
+		 */
+		@GET
+		@Path("public")
+		@Produces(MediaType.APPLICATION_JSON)
+		public Response getPublic(@HeaderParam(TENANT_HEADER) final String tenant)
+		{
+			return newResponse(tenant).tag("v1").header(HttpHeaders.CONTENT_LANGUAGE, "en").header("X-Custom", "custom").build();
+		}
+
+		/**
+		 * @param request
+		 *            request, to evaluate preconditions
+		 * @return response with entity tag, or 304 (Not Modified) if the entity tag matches If-None-Match
+		 */
+		@GET
+		@Path("conditional")
+		@Produces(MediaType.APPLICATION_JSON)
+		public Response getConditional(@Context final Request request)
+		{
+			final EntityTag entityTag = new EntityTag("v1");
+			final Response.ResponseBuilder notModifiedResponse = request.evaluatePreconditions(entityTag);
+			return notModifiedResponse == null ? newResponse(null).tag(entityTag).build() : notModifiedResponse.build();
+		}
+
+		/**
+		 * @return response with cookie
+		 */
+		@GET
+		@Path("cookie")
+		@Produces(MediaType.APPLICATION_JSON)
+		public Response getWithCookie()
+		{
+			return newResponse(null).cookie(new NewCookie("session", "s")).build();
+		}
+
+		/**
+		 * @return private response
+		 */
+		@GET
+		@Path("private")
+		@Produces(MediaType.APPLICATION_JSON)
+		public Response getPrivate()
+		{
+			return newResponse(null).header(HttpHeaders.CACHE_CONTROL, "max-age=60, Private").build();
+		}
+
+		/**
+		 * @return response varying with some request header
+		 */
+		@GET
+		@Path("vary")
+		@Produces(MediaType.APPLICATION_JSON)
+		public Response getVary()
+		{
+			return newResponse(null).header(HttpHeaders.VARY, "Accept-Language").build();
+		}
+	}
+
+	private static final SerializedResponseCache CACHE = new SerializedResponseCache(1024 * 1024, 64 * 1024, Duration.ofMinutes(1));
+
+	private static Server server;
+	private static URI baseUri;
+	private static HttpClient httpClient;
+
+	/**
+	 * Starts the embedded server
+	 *
+	 * @throws IOException
+	 *             no free port for the server
+	 */
+	@BeforeClass
+	public static void startServer() throws IOException
+	{
+		final int port;
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			port = socket.getLocalPort();
+		}
+
+		final JAXRSServerFactoryBean serverFactory = new JAXRSServerFactoryBean();
+		serverFactory.setAddress("http://localhost:" + port + "/");
+		serverFactory.setResourceClasses(CountingResource.class);
+		serverFactory.setResourceProvider(CountingResource.class, new SingletonResourceProvider(new CountingResource()));
+		serverFactory.setProviders(List.of(new JsonRiJaxrsProvider(), new UserHeaderAuthenticationFilter(), new ResponseCachingFilter(CACHE, List.of(TENANT_HEADER), true)));
+		server = serverFactory.create();
+		baseUri = URI.create("http://localhost:" + port + "/");
+		httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	/**
+	 * Stops the embedded server
+	 */
+	@AfterClass
+	public static void stopServer()
+	{
+		if (server != null)
+		{
+			server.destroy();
+		}
+	}
+
+	private static HttpResponse<String> send(final String path, final String headerName, final String headerValue) throws IOException, InterruptedException
+	{
+		final HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(baseUri.resolve(path)).header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON).GET();
+		if (headerValue != null)
+		{
+			requestBuilder.header(headerName, headerValue);
+		}
+
+		return httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static HttpResponse<String> get(final String path, final String tenant) throws IOException, InterruptedException
+	{
+		final HttpResponse<String> response = send(path, TENANT_HEADER, tenant);
+		assertEquals(200, response.statusCode());
+		return response;
+	}
+
+	@Test
+	public void hitReplaysEntityAndHeaders() throws Exception
+	{
+		final HttpResponse<String> miss = get("public?q=hit", null);
+		final HttpResponse<String> hit = get("public?q=hit", null);
+		assertEquals(miss.body(), hit.body());
+		for (final String headerName : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.CONTENT_LANGUAGE, "X-Custom"))
+		{
+			assertEquals(headerName, miss.headers().allValues(headerName), hit.headers().allValues(headerName));
+		}
+
+		assertEquals(List.of("custom"), hit.headers().allValues("X-Custom"));
+	}
+
+	@Test
+	public void keyIncludesRequestHeaders() throws Exception
+	{
+		final String tenant1Response = get("public?q=tenant", "tenant1").body();
+		assertNotEquals(tenant1Response, get("public?q=tenant", "tenant2").body());
+		assertEquals(tenant1Response, get("public?q=tenant", "tenant1").body());
+	}
+
+	@Test
+	public void keyIncludesUserPrincipal() throws Exception
+	{
+		final HttpResponse<String> user1Response = send("public?q=user", USER_HEADER, "user1");
+		assertEquals(200, user1Response.statusCode());
+		assertNotEquals(user1Response.body(), send("public?q=user", USER_HEADER, "user2").body());
+		assertNotEquals(user1Response.body(), get("public?q=user", null).body());
+		assertEquals(user1Response.body(), send("public?q=user", USER_HEADER, "user1").body());
+	}
+
+	@Test
+	public void conditionalRequestsNotServedFromCache() throws Exception
+	{
+		final String response = get("conditional", null).body();
+		assertEquals(response, get("conditional", null).body());
+
+		// evaluated by the resource
+		final HttpResponse<String> notModified = send("conditional", HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+		assertEquals(304, notModified.statusCode());
+		assertEquals("", notModified.body());
+
+		final HttpResponse<String> modified = send("conditional", HttpHeaders.IF_NONE_MATCH, "\"v0\"");
+		assertEquals(200, modified.statusCode());
+		assertNotEquals(response, modified.body());
+	}
+
+	@Test
+	public void invalidation() throws Exception
+	{
+		final String response = get("public?q=invalidation", null).body();
+		assertEquals(response, get("public?q=invalidation", null).body());
+		CACHE.invalidate(baseUri.resolve("public"));
+		assertNotEquals(response, get("public?q=invalidation", null).body());
+	}
+
+	@Test
+	public void responsesNotCached() throws Exception
+	{
+		for (final String path : List.of("cookie", "private", "vary"))
+		{
+			assertNotEquals(path, get(path, null).body(), get(path, null).body());
+		}
+	}
+}
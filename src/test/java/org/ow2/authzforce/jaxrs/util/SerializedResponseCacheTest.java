@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.jaxrs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Tests of {@link SerializedResponseCache} size limits, expiry and invalidation
+ */
+public class SerializedResponseCacheTest
+{
+	private static final URI BASE_URI = URI.create("http://localhost/");
+
+	private final AtomicLong nanoTime = new AtomicLong(-1000);
+
+	private static SerializedResponseCache.Key newKey(final String path)
+	{
+		return SerializedResponseCache.newKey(BASE_URI.resolve(path), List.of(MediaType.APPLICATION_JSON_TYPE), "");
+	}
+
+	private static void put(final SerializedResponseCache cache, final String path, final int size)
+	{
+		cache.put(newKey(path), new byte[size], MediaType.APPLICATION_JSON_TYPE, Map.of(), cache.getGeneration());
+	}
+
+	@Test
+	public void evictionOfLeastRecentlyUsedEntries()
+	{
+		final SerializedResponseCache cache = new SerializedResponseCache(1000, 1000, Duration.ofMinutes(1), nanoTime::get);
+		for (int i = 0; i < 10; i++)
+		{
+			put(cache, "r" + i, 100);
+			nanoTime.incrementAndGet();
+		}
+
+		assertEquals(1000, cache.getTotalSize());
+		// r0 becomes the most recently used
+		assertNotNull(cache.get(newKey("r0")));
+		nanoTime.incrementAndGet();
+
+		// beyond the maximum: evict down to 3/4 of the maximum (750)
+		put(cache, "r10", 100);
+		assertEquals(700, cache.getTotalSize());
+		for (int i = 1; i <= 4; i++)
+		{
+			assertNull("r" + i, cache.get(newKey("r" + i)));
+		}
+
+		for (final String path : List.of("r0", "r5", "r6", "r7", "r8", "r9", "r10"))
+		{
+			assertNotNull(path, cache.get(newKey(path)));
+		}
+	}
+
+	@Test
+	public void entryLargerThanMaxEntrySizeNotStored()
+	{
+		final SerializedResponseCache cache = new SerializedResponseCache(1000, 100, Duration.ofMinutes(1), nanoTime::get);
+		put(cache, "large", 101);
+		assertNull(cache.get(newKey("large")));
+		assertEquals(0, cache.getTotalSize());
+
+		put(cache, "small", 100);
+		assertNotNull(cache.get(newKey("small")));
+		assertEquals(100, cache.getTotalSize());
+	}
+
+	@Test
+	public void expiredEntryRemoved()
+	{
+		final SerializedResponseCache cache = new SerializedResponseCache(1000, 100, Duration.ofSeconds(10), nanoTime::get);
+		put(cache, "r", 10);
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10) - 1);
+		assertNotNull(cache.get(newKey("r")));
+
+		nanoTime.incrementAndGet();
+		assertNull(cache.get(newKey("r")));
+		assertEquals(0, cache.getTotalSize());
+	}
+
+	@Test
+	public void putAfterInvalidationDropped()
+	{
+		final SerializedResponseCache cache = new SerializedResponseCache(1000, 100, Duration.ofMinutes(1), nanoTime::get);
+		final SerializedResponseCache.Key key = newKey("r?q=1");
+		final long generationAtMiss = cache.getGeneration();
+		// concurrent update of the resource
+		cache.invalidate(BASE_URI.resolve("r"));
+		cache.put(key, new byte[10], MediaType.APPLICATION_JSON_TYPE, Map.of(), generationAtMiss);
+		assertNull(cache.get(key));
+		assertEquals(0, cache.getTotalSize());
+
+		final long generationAtMiss2 = cache.getGeneration();
+		cache.invalidateAll();
+		cache.put(key, new byte[10], MediaType.APPLICATION_JSON_TYPE, Map.of(), generationAtMiss2);
+		assertNull(cache.get(key));
+
+		cache.put(key, new byte[10], MediaType.APPLICATION_JSON_TYPE, Map.of(), cache.getGeneration());
+		assertNotNull(cache.get(key));
+	}
+}